@@ -15,13 +15,15 @@
 
 package net.ddns.rkdawenterprises.brief4eclipse;
 
-import org.eclipse.core.commands.Command;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.action.IStatusLineManager;
 import org.eclipse.jface.bindings.keys.KeyLookupFactory;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Shell;
@@ -33,8 +35,11 @@ import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.handlers.HandlerUtil;
 import org.eclipse.ui.handlers.IHandlerService;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.eclipse.ui.texteditor.ITextEditor;
 import org.osgi.framework.BundleContext;
 
+import net.ddns.rkdawenterprises.brief4eclipse.Command_registry.Command_handler;
+
 /**
  * The activator class controls the plug-in life cycle.
  */
@@ -60,12 +65,29 @@ public class Activator extends AbstractUIPlugin
      */
     private IStatusLineManager m_status_line_manager = null;
 
+    /**
+     * The commands defined in plugin.xml, with their actions.
+     */
+    private final Command_registry m_command_registry = new Command_registry();
+
+    /**
+     * Getter.
+     *
+     * @return  The commands defined in plugin.xml, with their actions.
+     */
+    public Command_registry get_command_registry()
+    {
+        return m_command_registry;
+    }
+
     @Override
     public void start( BundleContext context ) throws Exception
     {
         super.start( context );
         m_plugin = this;
 
+        register_commands();
+
         m_status_line_manager =
                 get_active_editor( PlatformUI.getWorkbench().getActiveWorkbenchWindow() ).
                 getEditorSite().getActionBars().getStatusLineManager();
@@ -237,13 +259,69 @@ public class Activator extends AbstractUIPlugin
     }
 
     /**
-     * Sends commands to the text editor proxy.
+     * Registers all of the commands defined in plugin.xml with their actions.
+     */
+    private void register_commands()
+    {
+        m_command_registry.register( "write_all_and_exit", false, ( ExecutionEvent event ) -> write_all_and_exit() ); //$NON-NLS-1$
+
+        m_command_registry.register( "line_marking_mode_toggle", true, ( ExecutionEvent event ) -> m_text_editor_proxy.line_marking_mode_toggle() ); //$NON-NLS-1$
+        m_command_registry.register( "numpad_copy", true, ( ExecutionEvent event ) -> m_text_editor_proxy.numpad_copy() ); //$NON-NLS-1$
+        m_command_registry.register( "numpad_cut", true, ( ExecutionEvent event ) -> m_text_editor_proxy.numpad_cut() ); //$NON-NLS-1$
+        m_command_registry.register( "insert_paste", true, ( ExecutionEvent event ) -> m_text_editor_proxy.insert_paste() ); //$NON-NLS-1$
+        m_command_registry.register( "insert_swap", true, ( ExecutionEvent event ) -> m_text_editor_proxy.insert_swap() ); //$NON-NLS-1$
+        m_command_registry.register( "column_marking_mode_toggle", true, ( ExecutionEvent event ) -> m_text_editor_proxy.column_marking_mode_toggle() ); //$NON-NLS-1$
+        m_command_registry.register( "marking_mode_toggle", true, ( ExecutionEvent event ) -> m_text_editor_proxy.marking_mode_toggle() ); //$NON-NLS-1$
+        m_command_registry.register( "repeat", true, ( ExecutionEvent event ) -> m_text_editor_proxy.repeat_command_or_string() ); //$NON-NLS-1$
+        m_command_registry.register( "macro_record_toggle", true, ( ExecutionEvent event ) -> m_text_editor_proxy.macro_record_toggle() ); //$NON-NLS-1$
+        m_command_registry.register( "macro_playback", true, ( ExecutionEvent event ) -> m_text_editor_proxy.macro_playback() ); //$NON-NLS-1$
+        m_command_registry.register( "open_macro_dialog", true, ( ExecutionEvent event ) -> m_text_editor_proxy.open_macro_dialog() ); //$NON-NLS-1$
+        m_command_registry.register( "scroll_buffer_up", true, ( ExecutionEvent event ) -> m_text_editor_proxy.scroll_buffer( 1 ) ); //$NON-NLS-1$
+        m_command_registry.register( "scroll_buffer_down", true, ( ExecutionEvent event ) -> m_text_editor_proxy.scroll_buffer( -1 ) ); //$NON-NLS-1$
+        m_command_registry.register( "line_to_top_of_window", true, ( ExecutionEvent event ) -> m_text_editor_proxy.line_to_top_of_window() ); //$NON-NLS-1$
+        m_command_registry.register( "center_line_in_window", true, ( ExecutionEvent event ) -> m_text_editor_proxy.center_line_in_window() ); //$NON-NLS-1$
+        m_command_registry.register( "line_to_bottom_of_window", true, ( ExecutionEvent event ) -> m_text_editor_proxy.line_to_bottom_of_window() ); //$NON-NLS-1$
+        m_command_registry.register( "top_of_buffer", true, ( ExecutionEvent event ) -> m_text_editor_proxy.top_of_buffer() ); //$NON-NLS-1$
+        m_command_registry.register( "bottom_of_buffer", true, ( ExecutionEvent event ) -> m_text_editor_proxy.bottom_of_buffer() ); //$NON-NLS-1$
+        m_command_registry.register( "top_of_window", true, ( ExecutionEvent event ) -> m_text_editor_proxy.top_of_window() ); //$NON-NLS-1$
+        m_command_registry.register( "end_of_window", true, ( ExecutionEvent event ) -> m_text_editor_proxy.end_of_window() ); //$NON-NLS-1$
+        m_command_registry.register( "left_side_of_window", true, ( ExecutionEvent event ) -> m_text_editor_proxy.left_side_of_window() ); //$NON-NLS-1$
+        m_command_registry.register( "right_side_of_window", true, ( ExecutionEvent event ) -> m_text_editor_proxy.right_side_of_window() ); //$NON-NLS-1$
+        m_command_registry.register( "home", true, ( ExecutionEvent event ) -> m_text_editor_proxy.home() ); //$NON-NLS-1$
+        m_command_registry.register( "end", true, ( ExecutionEvent event ) -> m_text_editor_proxy.end() ); //$NON-NLS-1$
+        m_command_registry.register( "virtual_caret_mode_toggle", true, ( ExecutionEvent event ) -> m_text_editor_proxy.virtual_caret_mode_toggle() ); //$NON-NLS-1$
+        m_command_registry.register( "go_to_line", true, ( ExecutionEvent event ) -> m_text_editor_proxy.go_to_line() ); //$NON-NLS-1$
+        m_command_registry.register( "jump_bookmark", true, ( ExecutionEvent event ) -> m_text_editor_proxy.jump_bookmark() ); //$NON-NLS-1$
+        m_command_registry.register( "open_bookmarks_dialog", true, ( ExecutionEvent event ) -> m_text_editor_proxy.open_bookmarks_dialog() ); //$NON-NLS-1$
+        m_command_registry.register( "drop_named_bookmark", true, ( ExecutionEvent event ) -> m_text_editor_proxy.drop_named_bookmark() ); //$NON-NLS-1$
+        m_command_registry.register( "jump_named_bookmark", true, ( ExecutionEvent event ) -> m_text_editor_proxy.jump_named_bookmark() ); //$NON-NLS-1$
+        m_command_registry.register( "replace_next", true, ( ExecutionEvent event ) -> m_text_editor_proxy.replace_next_previous( true ) ); //$NON-NLS-1$
+        m_command_registry.register( "replace_previous", true, ( ExecutionEvent event ) -> m_text_editor_proxy.replace_next_previous( false ) ); //$NON-NLS-1$
+        m_command_registry.register( "open_scrap_dialog", true, ( ExecutionEvent event ) -> m_text_editor_proxy.open_scrap_dialog() ); //$NON-NLS-1$
+        m_command_registry.register( "rename", true, ( ExecutionEvent event ) -> m_text_editor_proxy.change_output_file_name() ); //$NON-NLS-1$
+        m_command_registry.register( "drop_bookmark", true, ( ExecutionEvent event ) -> //$NON-NLS-1$
+        {
+            try
+            {
+                m_text_editor_proxy.drop_bookmark( Command_registry.get_integer_parameter( event, "number" ) ); //$NON-NLS-1$
+            }
+            catch( IllegalArgumentException exception )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + exception ); //$NON-NLS-1$ //$NON-NLS-2$
+                beep();
+            }
+        } );
+    }
+
+    /**
+     * Updates the text editor proxy with the active editor of the workbench window,
+     * creating the proxy if needed.
      *
-     * @param cmd               The command event. These are all the commands defined in plugin.xml.
      * @param workbench_window  The event's current workbench window.
+     *
+     * @return Error status, true if error occurs, false otherwise.
      */
-    private void text_editor_proxy_operations( Command cmd,
-                                               IWorkbenchWindow workbench_window )
+    private boolean update_text_editor_proxy( IWorkbenchWindow workbench_window )
     {
         if( m_text_editor_proxy == null )
         {
@@ -256,7 +334,7 @@ public class Activator extends AbstractUIPlugin
             catch( Exception exception ) {}
         }
 
-        if( m_text_editor_proxy == null ) return;
+        if( m_text_editor_proxy == null ) return true;
 
         try
         {
@@ -265,292 +343,91 @@ public class Activator extends AbstractUIPlugin
         catch( Exception exception )
         {
             Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + exception ); //$NON-NLS-1$ //$NON-NLS-2$
-            return;
+            return true;
         }
 
-        m_status_line_manager =
-                get_active_editor( PlatformUI.getWorkbench().getActiveWorkbenchWindow() ).
-                getEditorSite().getActionBars().getStatusLineManager();
-
-        // Process the command.
-        switch( cmd.getId() )
-        {
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.line_marking_mode_toggle": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.line_marking_mode_toggle();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.numpad_copy": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.numpad_copy();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.numpad_cut": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.numpad_cut();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.insert_paste": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.insert_paste();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.insert_swap": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.insert_swap();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.column_marking_mode_toggle": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.column_marking_mode_toggle();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.marking_mode_toggle": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.marking_mode_toggle();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.repeat": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.repeat_command_or_string();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.scroll_buffer_up": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.scroll_buffer( 1 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.scroll_buffer_down": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.scroll_buffer( -1 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.line_to_top_of_window": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.line_to_top_of_window();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.center_line_in_window": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.center_line_in_window();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.line_to_bottom_of_window": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.line_to_bottom_of_window();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.top_of_buffer": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.top_of_buffer();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.bottom_of_buffer": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.bottom_of_buffer();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.top_of_window": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.top_of_window();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.end_of_window": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.end_of_window();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.left_side_of_window": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.left_side_of_window();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.right_side_of_window": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.right_side_of_window();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.home": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.home();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.end": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.end();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.virtual_caret_mode_toggle": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.virtual_caret_mode_toggle();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.go_to_line": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.go_to_line();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark1": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 1 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark2": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 2 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark3": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 3 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark4": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 4 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark5": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 5 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark6": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 6 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark7": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 7 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark8": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 8 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark9": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 9 );
-                return;
-            }
+        m_status_line_manager = m_text_editor_proxy.get_editor_binding().get_status_line_manager();
 
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.drop_bookmark10": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.drop_bookmark( 10 );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.jump_bookmark": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.jump_bookmark();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.open_bookmarks_dialog": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.open_bookmarks_dialog();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.replace_next": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.replace_next_previous( true );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.replace_previous": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.replace_next_previous( false );
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.open_scrap_dialog": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.open_scrap_dialog();
-                return;
-            }
-
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.rename": //$NON-NLS-1$
-            {
-                m_text_editor_proxy.change_output_file_name();
-                return;
-            }
-
-            default:
-            {
-                return;
-            }
-        }
+        return false;
     }
 
     /**
      * Handles the key events from the Key Binding Handler.
-     * Most of them are handled by the text editor proxy, otherwise handled here.
+     * The command is looked up in the command registry, and if it works on the active
+     * text editor, the text editor proxy is updated with the active editor first.
      *
      * @param event     The key event.
+     * @param start     The System.nanoTime() when the key binding handler was called,
+     *                  for the command's latency.
      *
      * @return          Always returns null.
      *
      * @throws ExecutionException
      */
-    Object execute( ExecutionEvent event ) throws ExecutionException
+    Object execute( ExecutionEvent event,
+                    long start ) throws ExecutionException
     {
         // Initialize the proxy for the editor associated with this event.
         IWorkbenchWindow workbench_window = HandlerUtil.getActiveWorkbenchWindowChecked( event );
         if( workbench_window == null ) return null;
 
-        // Process the command.
-        Command cmd = event.getCommand();
-        switch( cmd.getId() )
+        Command_handler handler = m_command_registry.get( event.getCommand().getId() );
+        if( handler == null ) return null;
+
+        if( handler.uses_editor() && update_text_editor_proxy( workbench_window ) ) return null;
+
+        // Only the outermost command counts, since a macro replays commands from within one.
+        IDocument document = null;
+        if( handler.uses_editor() && ( m_document_edit_document == null ) )
         {
-            case "net.ddns.rkdawenterprises.brief4eclipse.commands.write_all_and_exit": //$NON-NLS-1$
-            {
-                write_all_and_exit();
-                return null;
-            }
+            ITextEditor text_editor = m_text_editor_proxy.get_editor_binding().get_text_editor();
+            document = text_editor.getDocumentProvider().getDocument( text_editor.getEditorInput() );
+        }
 
-            default:
+        if( document != null )
+        {
+            m_document_edit_document = document;
+            document.addDocumentListener( m_document_edit_listener );
+        }
+
+        try
+        {
+            handler.execute( event,
+                             start );
+        }
+        finally
+        {
+            if( document != null )
             {
-                text_editor_proxy_operations( cmd,
-                                              workbench_window );
-                return null;
+                document.removeDocumentListener( m_document_edit_listener );
+                m_document_edit_document = null;
             }
         }
+
+        return null;
     }
 
+    /**
+     * Counts every change to the active document while a command executes, however it is
+     * made, e.g. by the text editor proxy or by the commands a macro replays.
+     */
+    private final IDocumentListener m_document_edit_listener = new IDocumentListener()
+    {
+        @Override
+        public void documentAboutToBeChanged( DocumentEvent event ) {}
+
+        @Override
+        public void documentChanged( DocumentEvent event )
+        {
+            Metrics.count( Metrics.COUNTER.DOCUMENT_EDIT );
+        }
+    };
+
+    /**
+     * The document whose edits are being counted, or null if no command is executing.
+     */
+    private IDocument m_document_edit_document = null;
+
     /**
      * Gets the given workbench window's currently active editor.
      *
@@ -621,7 +498,7 @@ public class Activator extends AbstractUIPlugin
      *
      * @param text                  The string to convert and truncate.
      * @param column_max_chars      The length to truncate to.
-     * @param end_not_beginning     Truncate the end of the string if <i>true</i>, otherwise the beginning.
+     * @param beginning_not_end     Truncate the beginning of the string if <i>true</i>, otherwise the end.
      *
      * @return  The modified string.
      */
@@ -629,31 +506,11 @@ public class Activator extends AbstractUIPlugin
                                            int column_max_chars,
                                            boolean beginning_not_end )
     {
-        //  Replace line delimiter with a literal line delimiter string.
-        text = text.replace( Messages.brief_for_eclipse_13, Messages.brief_for_eclipse_14 );
-        text = text.replace( Messages.brief_for_eclipse_15, Messages.brief_for_eclipse_16 );
-
-        // Set the string length to less than the editor width in characters.
-        if( text.length() > column_max_chars  )
-        {
-            String elipsis = Messages.brief_for_eclipse_17;
-            column_max_chars -= elipsis.length();
-            int corrected_max_width =
-                    ( ( Character.isLowSurrogate( text.charAt( column_max_chars ) ) ) &&
-                    ( column_max_chars > 0 ) ) ? column_max_chars - 1 : column_max_chars;
-            corrected_max_width = Math.min( text.length(), corrected_max_width );
-
-            if( beginning_not_end )
-            {
-                int offset = text.length() - corrected_max_width;
-                text = elipsis + text.substring( offset, text.length() );
-            }
-            else
-            {
-                text = text.substring( 0, corrected_max_width ) + elipsis;
-            }
-        }
-
-        return text;
+        return Text_utilities.truncate_elipsis( text,
+                                                column_max_chars,
+                                                beginning_not_end,
+                                                Messages.brief_for_eclipse_14,
+                                                Messages.brief_for_eclipse_16,
+                                                Messages.brief_for_eclipse_17 );
     }
 }
@@ -16,7 +16,6 @@
 package net.ddns.rkdawenterprises.brief4eclipse;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.eclipse.jface.viewers.Viewer;
@@ -31,9 +30,14 @@ import net.ddns.rkdawenterprises.brief4eclipse.Bookmarks_support.Bookmark_info;
 public class Bookmark_dialog extends Abstract_table_info
 {
     /**
-     * Reference to the current list of bookmarks.
+     * Reference to the bookmark support, which has the bookmarks.
      */
-    private LinkedList<Bookmark_info> m_bookmarks = null;
+    private Bookmarks_support m_bookmarks_support = null;
+
+    /**
+     * The index of the named bookmarks listed after the numbered ones, or null if none.
+     */
+    private Named_bookmark_index m_named_index = null;
 
     /**
      * The maximum width of the dialog, in characters, to stay within the bounds of the editor.
@@ -50,17 +54,20 @@ public class Bookmark_dialog extends Abstract_table_info
      *
      * @param parent_shell  The parent shell.
      * @param editor        The active editor the dialog should act upon.
-     * @param bookmarks     The current list of bookmarks.
+     * @param bookmarks_support     The bookmark support, which has the bookmarks.
+     * @param named_index           The index of the named bookmarks to list, or null if none.
      * @param max_width_in_chars    The maximum width of the dialog, in characters, to stay within the bounds of the editor.
      */
     protected Bookmark_dialog( Shell parent_shell,
                                IEditorPart editor,
-                               LinkedList<Bookmark_info> bookmarks,
+                               Bookmarks_support bookmarks_support,
+                               Named_bookmark_index named_index,
                                int max_width_in_chars  )
     {
         super( parent_shell,
                editor );
-        m_bookmarks = bookmarks;
+        m_bookmarks_support = bookmarks_support;
+        m_named_index = named_index;
         m_max_width_in_chars = max_width_in_chars;
     }
 
@@ -89,7 +96,7 @@ public class Bookmark_dialog extends Abstract_table_info
 
         switch( column_index )
         {
-            case 0: return Integer.toString( bookmark.m_number );
+            case 0: return ( bookmark.get_name() != null ) ? bookmark.get_name() : Integer.toString( bookmark.m_number );
 
             case 1:
             {
@@ -102,8 +109,8 @@ public class Bookmark_dialog extends Abstract_table_info
                 return text;
             }
 
-            case 2: return bookmark.m_line_column;
-            case 3: return Integer.toString( bookmark.m_offset );
+            case 2: return bookmark.get_line_column();
+            case 3: return Integer.toString( bookmark.get_offset() );
 
             default: return null;
         }
@@ -124,18 +131,18 @@ public class Bookmark_dialog extends Abstract_table_info
     @Override
     public List< Object > get_table_items()
     {
-        return( new ArrayList<Object>( m_bookmarks ) );
+        List<Object> items = new ArrayList<Object>( m_bookmarks_support.get_bookmarks() );
+        if( m_named_index != null ) items.addAll( m_named_index.get_bookmarks() );
+
+        return( items );
     }
 
     /**
-     * @return  The currently selected bookmark's number, 1-10, or -1 if no bookmark selected.
+     * @return  The currently selected bookmark, numbered or named, or null if no bookmark selected.
      */
-    public int get_selected_bookmark_number()
+    public Bookmark_info get_selected_bookmark()
     {
-        Bookmark_info bmi = (Bookmark_info)get_selected_item();
-        if( bmi == null ) return( -1 );
-
-        return( bmi.m_number );
+        return( (Bookmark_info)get_selected_item() );
     }
 
     @Override
@@ -150,13 +157,21 @@ public class Bookmark_dialog extends Abstract_table_info
         Bookmark_info bmi = (Bookmark_info)get_selected_item();
         if( bmi == null ) return;
 
-        m_bookmarks.remove( bmi );
+        if( bmi.get_name() != null )
+        {
+            if( m_named_index != null ) m_bookmarks_support.remove_named_bookmark( m_named_index, bmi );
+        }
+        else
+        {
+            m_bookmarks_support.remove_bookmark( bmi );
+        }
     }
 
     @Override
     public void clear_all_button_pressed()
     {
-        m_bookmarks.clear();
+        m_bookmarks_support.remove_all_bookmarks();
+        if( m_named_index != null ) m_bookmarks_support.remove_all_named_bookmarks( m_named_index );
     }
 
     public static class Viewer_comparator extends ViewerComparator
@@ -172,7 +187,15 @@ public class Bookmark_dialog extends Abstract_table_info
             /*
              * This will need to be a switch using "this.propertyIndex" if additional
              * column support is needed. And direction will need to invert the result.
+             * The named bookmarks come after the numbered ones, by name.
              */
+            if( ( bmi1.get_name() != null ) || ( bmi2.get_name() != null ) )
+            {
+                if( bmi1.get_name() == null ) return -1;
+                if( bmi2.get_name() == null ) return 1;
+                return bmi1.get_name().compareTo( bmi2.get_name() );
+            }
+
             if( bmi1.m_number > bmi2.m_number )
             {
                 return 1;
@@ -0,0 +1,177 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Bookmarks_support.Bookmark_info;
+
+/**
+ * Stores the bookmarks in the background, shortly after they change.
+ *
+ * The UI thread only takes a copy of the bookmarks and hands it to the job. Writing the
+ * markers and the preferences is done by this job. Changes that come in quick succession,
+ * e.g. clearing several bookmarks, restart the delay, so only the last copy is stored.
+ *
+ * The named bookmark indexes hand their encoded journal records and snapshots to the job
+ * too. These are all written, in the order they were handed over.
+ */
+public class Bookmark_store_job extends Job
+{
+    /**
+     * The delay from the last change until the bookmarks are stored, in milliseconds.
+     */
+    private static final long DELAY = 500;
+
+    /**
+     * The bookmark support the bookmarks are stored by.
+     */
+    private final Bookmarks_support m_bookmarks_support;
+
+    /**
+     * The copy of the bookmarks waiting to be stored, or null if none.
+     */
+    private final AtomicReference<List<Bookmark_info>> m_pending = new AtomicReference<List<Bookmark_info>>();
+
+    /**
+     * A write of a named bookmark index file, encoded on the UI thread.
+     */
+    private static final class Index_write
+    {
+        /**
+         * The index the file belongs to.
+         */
+        private final Named_bookmark_index m_index;
+
+        /**
+         * The encoded snapshot or journal record.
+         */
+        private final byte[] m_bytes;
+
+        /**
+         * True to replace the file with a snapshot, false to append a record.
+         */
+        private final boolean m_replace;
+
+        /**
+         * Creates the write.
+         *
+         * @param index     The index the file belongs to.
+         * @param bytes     The encoded snapshot or journal record.
+         * @param replace   True to replace the file with a snapshot, false to append a record.
+         */
+        private Index_write( Named_bookmark_index index,
+                             byte[] bytes,
+                             boolean replace )
+        {
+            m_index = index;
+            m_bytes = bytes;
+            m_replace = replace;
+        }
+    }
+
+    /**
+     * The named bookmark index writes waiting to be written, oldest first.
+     */
+    private final ConcurrentLinkedQueue<Index_write> m_index_writes = new ConcurrentLinkedQueue<Index_write>();
+
+    /**
+     * Creates the store job.
+     *
+     * @param bookmarks_support     The bookmark support the bookmarks are stored by.
+     */
+    protected Bookmark_store_job( Bookmarks_support bookmarks_support )
+    {
+        super( Messages.bookmark_store_job_0 );
+
+        m_bookmarks_support = bookmarks_support;
+
+        setSystem( true );
+        setPriority( Job.SHORT );
+    }
+
+    /**
+     * Replaces the bookmarks waiting to be stored, and schedules the job after the delay.
+     *
+     * @param bookmarks     A copy of the bookmarks, not changed after this call.
+     */
+    public void request( List<Bookmark_info> bookmarks )
+    {
+        m_pending.set( bookmarks );
+        schedule( DELAY );
+    }
+
+    /**
+     * Queues a write of a named bookmark index file, and schedules the job after the delay.
+     *
+     * @param index     The index the file belongs to.
+     * @param bytes     The encoded snapshot or journal record, not changed after this call.
+     * @param replace   True to replace the file with a snapshot, false to append a record.
+     */
+    public void request_index_write( Named_bookmark_index index,
+                                     byte[] bytes,
+                                     boolean replace )
+    {
+        m_index_writes.add( new Index_write( index, bytes, replace ) );
+        schedule( DELAY );
+    }
+
+    /**
+     * Writes the named bookmark index writes waiting, in order. Called by the job, and when
+     * the bookmarks are disposed, after the job has finished.
+     */
+    protected void write_indexes()
+    {
+        for( Index_write write = m_index_writes.poll(); write != null; write = m_index_writes.poll() )
+        {
+            write.m_index.write( write.m_bytes, write.m_replace );
+        }
+    }
+
+    /**
+     * Takes the bookmarks waiting to be stored.
+     *
+     * @return  The bookmarks, or null if none.
+     */
+    protected List<Bookmark_info> take()
+    {
+        return m_pending.getAndSet( null );
+    }
+
+    @Override
+    protected IStatus run( IProgressMonitor monitor )
+    {
+        List<Bookmark_info> bookmarks = take();
+
+        if( monitor.isCanceled() )
+        {
+            if( bookmarks != null ) m_pending.compareAndSet( null, bookmarks );
+            return Status.CANCEL_STATUS;
+        }
+
+        write_indexes();
+        if( bookmarks != null ) m_bookmarks_support.store_bookmarks( bookmarks );
+
+        return Status.OK_STATUS;
+    }
+}
@@ -24,22 +24,57 @@ import java.io.ObjectOutputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
-import java.util.LinkedList;
-
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPositionCategoryException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IPositionUpdater;
+import org.eclipse.jface.text.Position;
 import org.eclipse.jface.window.Window;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IEditorReference;
-import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IPartListener2;
+import org.eclipse.ui.IPropertyListener;
 import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchPartConstants;
+import org.eclipse.ui.IWorkbenchPartReference;
 import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.ide.FileStoreEditorInput;
+import org.eclipse.ui.ide.IDE;
 import org.eclipse.ui.part.FileEditorInput;
+import org.eclipse.ui.texteditor.IDocumentProvider;
+import org.eclipse.ui.texteditor.ITextEditor;
+import org.osgi.service.prefs.BackingStoreException;
 import org.osgi.service.prefs.Preferences;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+
 /**
  * Bookmark functionality.
  */
@@ -55,7 +90,22 @@ public class Bookmarks_support
     protected Bookmarks_support( Text_editor_proxy text_editor_proxy )
     {
         m_text_editor_proxy = text_editor_proxy;
+
+        m_max_bookmark_number = Math.max( MIN_BOOKMARK_NUMBER,
+                                          Platform.getPreferencesService().getInt( Activator.PLUGIN_ID,
+                                                                                   MAX_BOOKMARK_NUMBER_PREFERENCE,
+                                                                                   DEFAULT_MAX_BOOKMARK_NUMBER,
+                                                                                   null ) );
+        m_bookmarks_by_number = new Bookmark_info[m_max_bookmark_number + 1];
+
+        m_marker_mode = Platform.getPreferencesService().getBoolean( Activator.PLUGIN_ID,
+                                                                     MARKER_MODE_PREFERENCE,
+                                                                     false,
+                                                                     null );
+        m_store_job = new Bookmark_store_job( this );
+
         get_stored_bookmarks();
+        get_marker_bookmarks();
     }
 
     /**
@@ -63,7 +113,34 @@ public class Bookmarks_support
      */
     protected void dispose()
     {
-        store_bookmarks();
+        for( IWorkbenchWindow window : m_listened_windows )
+        {
+            window.getPartService().removePartListener( m_editor_index_part_listener );
+        }
+        m_listened_windows.clear();
+        m_editors_by_resource.clear();
+        m_resources_by_editor.clear();
+
+        for( IEditorPart editor : new ArrayList<IEditorPart>( m_attached_resources.keySet() ) )
+        {
+            detach( editor );
+        }
+
+        // Store the final bookmarks here, instead of any copy still waiting for the job,
+        // and finish the named bookmark index writes still waiting for it.
+        m_store_job.cancel();
+        try
+        {
+            m_store_job.join();
+        }
+        catch( InterruptedException exception )
+        {
+            Thread.currentThread().interrupt();
+        }
+        m_store_job.take();
+        m_store_job.write_indexes();
+
+        store_bookmarks( get_bookmarks_copy() );
     }
 
     /**
@@ -75,6 +152,8 @@ public class Bookmarks_support
      */
     private String get_editor_file_path( IEditorPart editor )
     {
+        if( editor == null ) return null;
+
         IEditorInput editor_input = editor.getEditorInput();
         if( editor_input == null ) return null;
 
@@ -125,14 +204,199 @@ public class Bookmarks_support
     public static final int MIN_BOOKMARK_NUMBER = 1;
 
     /**
-     * The last bookmark number.
+     * The default last bookmark number.
+     */
+    public static final int DEFAULT_MAX_BOOKMARK_NUMBER = 10;
+
+    /**
+     * Preference key of the last bookmark number.
+     */
+    public static final String MAX_BOOKMARK_NUMBER_PREFERENCE = "bookmark_max_number"; //$NON-NLS-1$
+
+    /**
+     * The last bookmark number, from the preferences.
+     */
+    private final int m_max_bookmark_number;
+
+    /**
+     * Preference key of the marker mode.
+     */
+    public static final String MARKER_MODE_PREFERENCE = "bookmark_markers"; //$NON-NLS-1$
+
+    /**
+     * The marker type of the bookmarks in workspace files, in marker mode.
+     */
+    public static final String MARKER_TYPE = Activator.PLUGIN_ID + ".bookmark"; //$NON-NLS-1$
+
+    /**
+     * The marker attribute with the bookmark number.
+     */
+    private static final String NUMBER_ATTRIBUTE = "number"; //$NON-NLS-1$
+
+    /**
+     * In marker mode, from the preferences, the bookmarks in workspace files are stored as
+     * markers on the files, which the workspace persists and moves when the files are saved.
+     * The other bookmarks are stored in the preferences.
+     */
+    private final boolean m_marker_mode;
+
+    /**
+     * Indicates there may be bookmark markers in the workspace, i.e. some were found at
+     * startup or marker mode is on, so storing the bookmarks must update or delete them.
+     */
+    private volatile boolean m_has_markers = false;
+
+    /**
+     * Stores the bookmarks in the background after they change.
+     */
+    private final Bookmark_store_job m_store_job;
+
+    /**
+     * Getter.
+     *
+     * @return  The last bookmark number.
+     */
+    public int get_max_bookmark_number()
+    {
+        return m_max_bookmark_number;
+    }
+
+    /**
+     * The bookmarks, indexed by bookmark number. Index 0 is not used.
+     */
+    private final Bookmark_info[] m_bookmarks_by_number;
+
+    /**
+     * The number of bookmarks.
+     */
+    private int m_bookmark_count = 0;
+
+    /**
+     * The bookmarks, by the file path they are in.
+     */
+    private final ListMultimap<String, Bookmark_info> m_bookmarks_by_resource = ArrayListMultimap.create();
+
+    /**
+     * The file path of each editor with tracked bookmarks, as it was when they were attached.
+     */
+    private final HashMap<IEditorPart, String> m_attached_resources = new HashMap<IEditorPart, String>();
+
+    /**
+     * The directory of the named bookmark indexes in the plug-in's state location.
+     */
+    private static final String NAMED_BOOKMARKS_DIRECTORY = "bookmarks"; //$NON-NLS-1$
+
+    /**
+     * The named bookmark index file of the files that are not in a project.
+     */
+    private static final String EXTERNAL_INDEX_FILE_NAME = "external.bin"; //$NON-NLS-1$
+
+    /**
+     * The named bookmark indexes that were read, by project name. The files that are
+     * not in a project use the empty name.
+     */
+    private final HashMap<String, Named_bookmark_index> m_named_indexes = new HashMap<String, Named_bookmark_index>();
+
+    /**
+     * The named bookmark index of each editor with tracked named bookmarks.
+     */
+    private final HashMap<IEditorPart, Named_bookmark_index> m_attached_named_indexes = new HashMap<IEditorPart, Named_bookmark_index>();
+
+    /**
+     * The open editors, by their file path.
+     */
+    private final HashMap<String, IEditorReference> m_editors_by_resource = new HashMap<String, IEditorReference>();
+
+    /**
+     * The file path of each editor in m_editors_by_resource, as it was when it was added.
+     */
+    private final HashMap<IEditorReference, String> m_resources_by_editor = new HashMap<IEditorReference, String>();
+
+    /**
+     * The workbench windows the editor index part listener is registered with.
+     */
+    private final HashSet<IWorkbenchWindow> m_listened_windows = new HashSet<IWorkbenchWindow>();
+
+    /**
+     * Keeps the open editors by file path up to date as editors are opened, closed,
+     * or change their input.
+     */
+    private final IPartListener2 m_editor_index_part_listener = new IPartListener2()
+    {
+        @Override
+        public void partOpened( IWorkbenchPartReference part_reference )
+        {
+            if( part_reference instanceof IEditorReference ) add_editor( (IEditorReference)part_reference );
+        }
+
+        @Override
+        public void partClosed( IWorkbenchPartReference part_reference )
+        {
+            if( part_reference instanceof IEditorReference ) remove_editor( (IEditorReference)part_reference );
+        }
+
+        @Override
+        public void partInputChanged( IWorkbenchPartReference part_reference )
+        {
+            if( !( part_reference instanceof IEditorReference ) ) return;
+
+            remove_editor( (IEditorReference)part_reference );
+            add_editor( (IEditorReference)part_reference );
+        }
+    };
+
+    /**
+     * Starts keeping the open editors of a workbench window by file path. The editors
+     * that are already created are added, the others are added when they are opened.
+     * Called when the text editor proxy first binds to an editor in the window.
+     *
+     * @param workbench_window  The workbench window.
+     */
+    protected void listen( IWorkbenchWindow workbench_window )
+    {
+        if( !m_listened_windows.add( workbench_window ) ) return;
+
+        workbench_window.getPartService().addPartListener( m_editor_index_part_listener );
+
+        for( IWorkbenchPage page : workbench_window.getPages() )
+        {
+            for( IEditorReference editor_reference : page.getEditorReferences() )
+            {
+                // Only the editors already created, so no editor is restored.
+                if( editor_reference.getEditor( false ) != null ) add_editor( editor_reference );
+            }
+        }
+    }
+
+    /**
+     * Adds an open editor to the editors by file path.
+     *
+     * @param editor_reference  The editor's reference.
      */
-    public static final int MAX_BOOKMARK_NUMBER = 10;
+    private void add_editor( IEditorReference editor_reference )
+    {
+        IEditorPart editor = editor_reference.getEditor( false );
+        if( editor == null ) return;
+
+        String path = get_editor_file_path( editor );
+        if( path == null ) return;
+
+        m_editors_by_resource.put( path, editor_reference );
+        m_resources_by_editor.put( editor_reference, path );
+    }
 
     /**
-     * The list of bookmarks.
+     * Removes an editor from the editors by file path.
+     *
+     * @param editor_reference  The editor's reference.
      */
-    private LinkedList<Bookmark_info> m_bookmarks = null;
+    private void remove_editor( IEditorReference editor_reference )
+    {
+        String path = m_resources_by_editor.remove( editor_reference );
+        if( path == null ) return;
+
+        if( m_editors_by_resource.get( path ) == editor_reference ) m_editors_by_resource.remove( path );
+    }
 
     /**
      * Represents a bookmark.
@@ -142,10 +406,15 @@ public class Bookmarks_support
         private static final long serialVersionUID = 7082009511901719744L;
 
         /**
-         * The bookmark's number (1-10).
+         * The bookmark's number, from 1 to the configured last bookmark number.
          */
         protected int m_number = -1;
 
+        /**
+         * The bookmark's name, or null for a numbered bookmark.
+         */
+        protected String m_name = null;
+
         /**
          * The bookmark's caret/character offset in the editor.
          */
@@ -161,13 +430,35 @@ public class Bookmarks_support
          */
         protected String m_resource = null;
 
+        /**
+         * The live position of the bookmark in the open document, kept up to date with edits
+         * by the document's position updater. Null if the bookmark's file is not open.
+         */
+        protected transient Position m_position = null;
+
+        /**
+         * The document the live position is registered with, or null.
+         */
+        protected transient IDocument m_document = null;
+
+        /**
+         * The editor, as given by the workbench, that has the document open, or null.
+         */
+        protected transient IEditorPart m_editor = null;
+
+        /**
+         * The offset last written to the named bookmark index, or for a numbered bookmark in
+         * marker mode, last written to or read from its marker.
+         */
+        protected transient int m_stored_offset = -1;
+
         /**
          * Create a bookmark.
          *
          * @param location  The cursor location/offset in the file.
          * @param resource  The file path.
          * @param line_column   The line index and column index of the bookmark.
-         * @param number    The bookmark number. Currently 1-10.
+         * @param number    The bookmark number, at least 1.
          *
          * @throws IllegalArgumentException
          */
@@ -180,7 +471,7 @@ public class Bookmarks_support
             m_resource = resource;
             m_line_column = line_column;
 
-            if( ( number < MIN_BOOKMARK_NUMBER ) || ( number > MAX_BOOKMARK_NUMBER ) )
+            if( number < MIN_BOOKMARK_NUMBER )
             {
                 throw( new IllegalArgumentException( " Bookmark number " + number + " is out of range." ) ); //$NON-NLS-1$ //$NON-NLS-2$
             }
@@ -188,6 +479,96 @@ public class Bookmarks_support
             m_number = number;
         }
 
+        /**
+         * Create a named bookmark.
+         *
+         * @param location  The cursor location/offset in the file.
+         * @param resource  The file path.
+         * @param name      The bookmark name.
+         */
+        public Bookmark_info( int location,
+                              String resource,
+                              String name )
+        {
+            m_offset = location;
+            m_resource = resource;
+            m_name = name;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  The bookmark's name, or null for a numbered bookmark.
+         */
+        public String get_name()
+        {
+            return m_name;
+        }
+
+        /**
+         * Gets the bookmark's offset, from the live position if its file is open.
+         *
+         * @return  The bookmark's caret/character offset in the document model.
+         */
+        public int get_offset()
+        {
+            return( ( m_position != null ) ? m_position.getOffset() : m_offset );
+        }
+
+        /**
+         * Gets the bookmark's location as line and column, for display. Computed from
+         * the live position if its file is open, otherwise the location when the file
+         * was last closed or saved.
+         *
+         * @return  The line and column, 1-based, or an empty string if not known.
+         */
+        public String get_line_column()
+        {
+            if( m_position != null )
+            {
+                try
+                {
+                    int offset = m_position.getOffset();
+                    int line = m_document.getLineOfOffset( offset );
+                    return( ( line + 1 ) + Messages.bookmarks_support_18 + ( offset - m_document.getLineOffset( line ) + 1 ) );
+                }
+                catch( BadLocationException exception ) {}
+            }
+
+            return( ( m_line_column != null ) ? m_line_column : "" ); //$NON-NLS-1$
+        }
+
+        /**
+         * Copies the live position back into the stored offset and line/column.
+         */
+        private void write_back()
+        {
+            if( m_position == null ) return;
+
+            m_line_column = get_line_column();
+            m_offset = m_position.getOffset();
+        }
+
+        /**
+         * Writes back and removes the live position from its document.
+         */
+        protected void remove_position()
+        {
+            if( m_position == null ) return;
+
+            write_back();
+
+            try
+            {
+                m_document.removePosition( POSITION_CATEGORY, m_position );
+            }
+            catch( BadPositionCategoryException exception ) {}
+
+            m_position = null;
+            m_document = null;
+            m_editor = null;
+        }
+
         /**
          * De-serializes a bookmark.
          *
@@ -205,7 +586,7 @@ public class Bookmarks_support
                 ois = new ObjectInputStream( bais );
                 Bookmark_info bmi = (Bookmark_info)ois.readObject();
 
-                if( ( bmi.m_number < MIN_BOOKMARK_NUMBER ) || ( bmi.m_number > MAX_BOOKMARK_NUMBER ) ) return null;
+                if( bmi.m_number < MIN_BOOKMARK_NUMBER ) return null;
 
                 return( bmi );
             }
@@ -246,14 +627,12 @@ public class Bookmarks_support
      */
     private void get_stored_bookmarks()
     {
-        m_bookmarks = new LinkedList<Bookmark_info>();
-
         Preferences preferences = InstanceScope.INSTANCE.getNode( Activator.PLUGIN_ID );
         if( preferences == null ) return;
 
         Preferences bookmarks = preferences.node( "bookmarks" ); //$NON-NLS-1$
 
-        for( int number = MIN_BOOKMARK_NUMBER; number <= MAX_BOOKMARK_NUMBER; number++ )
+        for( int number = MIN_BOOKMARK_NUMBER; number <= m_max_bookmark_number; number++ )
         {
             String bookmark_serialized;
             bookmark_serialized = bookmarks.get( String.valueOf( number ), "" ); //$NON-NLS-1$
@@ -266,117 +645,711 @@ public class Bookmarks_support
                 continue;
             }
 
-            if( ( bmi.m_resource == null ) || ( bmi.m_line_column == null ) ||
-                    ( bmi.m_offset == -1 ) || ( bmi.m_number == -1 ) )
+            if( ( bmi.m_resource == null ) || ( bmi.m_offset == -1 ) || ( bmi.m_number != number ) )
             {
                 bookmarks.remove( String.valueOf( number ) );
                 continue;
             }
 
-            if( m_bookmarks.indexOf( bmi ) == -1 )
-            {
-                m_bookmarks.add( bmi );
-            }
+            put_bookmark( bmi );
         }
     }
 
-    @SuppressWarnings( "unused" )
-    private void print_bookmarks()
+    /**
+     * Gets the bookmarks stored as markers. Read whether or not in marker mode, so the
+     * bookmarks are kept when marker mode is turned off. A marker replaces a bookmark
+     * with the same number from the preferences.
+     */
+    private void get_marker_bookmarks()
     {
-        StringBuilder message = new StringBuilder();
-        boolean no_bookmarks = true;
-        for( Bookmark_info bmi : m_bookmarks )
+        IMarker[] markers = null;
+        try
         {
-            no_bookmarks = false;
-            message.append( "\tBookmark " ); //$NON-NLS-1$
-            message.append( bmi.m_number );
-            message.append( " = [" + bmi.m_resource + //$NON-NLS-1$
-                            ", " + bmi.m_offset + //$NON-NLS-1$
-                            ", " + bmi.m_line_column + "]\n" ); //$NON-NLS-1$ //$NON-NLS-2$
+            markers = ResourcesPlugin.getWorkspace().getRoot().findMarkers( MARKER_TYPE, false, IResource.DEPTH_INFINITE );
+        }
+        catch( CoreException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": ", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            m_has_markers = true;
+            return;
         }
 
-        Activator.system_message( "get_stored_bookmarks:\n" + ( no_bookmarks ? //$NON-NLS-1$
-                "\tno stored bookmarks" : message.toString() ) ); //$NON-NLS-1$
+        m_has_markers = m_marker_mode || ( markers.length > 0 );
+
+        for( IMarker marker : markers )
+        {
+            int number = marker.getAttribute( NUMBER_ATTRIBUTE, -1 );
+            int offset = marker.getAttribute( IMarker.CHAR_START, -1 );
+            IPath location = marker.getResource().getLocation();
+            if( ( number < MIN_BOOKMARK_NUMBER ) || ( number > m_max_bookmark_number ) || ( offset < 0 ) || ( location == null ) ) continue;
+
+            Bookmark_info bmi = get_bookmark( number );
+            if( bmi != null ) unindex_bookmark( bmi );
+
+            bmi = new Bookmark_info( offset, location.toPortableString(), null, number );
+            bmi.m_stored_offset = offset;
+            put_bookmark( bmi );
+        }
     }
 
     /**
-     * Gets a bookmark for the given bookmark number.
+     * Takes the offset of a bookmark that is not open in an editor from its marker, if the
+     * bookmark has not moved since it was last stored, and the workspace has moved the
+     * marker since, e.g. when the file was edited and saved in an editor the bookmark is
+     * not tracked in. Only used in marker mode.
      *
-     * @param number    The bookmark number.
+     * @param bmi   The bookmark.
+     */
+    private void refresh_from_marker( Bookmark_info bmi )
+    {
+        if( ( bmi.m_position != null ) || ( bmi.m_offset != bmi.m_stored_offset ) ) return;
+
+        IFile file = get_workspace_file( bmi.m_resource );
+        if( file == null ) return;
+
+        try
+        {
+            for( IMarker marker : file.findMarkers( MARKER_TYPE, false, IResource.DEPTH_ZERO ) )
+            {
+                if( marker.getAttribute( NUMBER_ATTRIBUTE, -1 ) != bmi.m_number ) continue;
+
+                int offset = marker.getAttribute( IMarker.CHAR_START, -1 );
+                if( ( offset >= 0 ) && ( offset != bmi.m_offset ) )
+                {
+                    bmi.m_offset = offset;
+                    bmi.m_stored_offset = offset;
+                    bmi.m_line_column = null;
+                }
+                return;
+            }
+        }
+        catch( CoreException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": ", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Gets the workspace file of a file path.
      *
-     * @return  The bookmark with the given number or null if it does not exist.
+     * @param resource  The file path.
+     *
+     * @return  The workspace file, or null if the file is not in the workspace.
      */
-    private Bookmark_info get_bookmark( int number )
+    private static IFile get_workspace_file( String resource )
     {
-        if( ( number < MIN_BOOKMARK_NUMBER ) || ( number > MAX_BOOKMARK_NUMBER ) ) return null;
+        IFile file = ResourcesPlugin.getWorkspace().getRoot().getFileForLocation( Path.fromPortableString( resource ) );
+        if( ( file == null ) || !file.exists() ) return null;
 
-        for( Bookmark_info bmi : m_bookmarks )
+        return file;
+    }
+
+    /**
+     * Obtains the name of the project of the editor input.
+     *
+     * @param editor_input  The editor input.
+     *
+     * @return  The project name, an empty string if the file is not in a project,
+     *          or null if the editor input is not a file.
+     */
+    private static String get_editor_project( IEditorInput editor_input )
+    {
+        if( editor_input instanceof FileEditorInput )
         {
-            if( bmi.m_number == number ) return bmi;
+            return( ( (FileEditorInput)editor_input ).getFile().getProject().getName() );
         }
 
+        if( editor_input instanceof FileStoreEditorInput ) return ""; //$NON-NLS-1$
+
         return null;
     }
 
     /**
-     * Creates a new bookmark for the given bookmark number, or modifies the existing one.
-     * Places it in the bookmark list.
+     * Gets the named bookmark index of a project, reading it the first time it is needed.
      *
-     * @param number        The bookmark number.
-     * @param location      The bookmarks location/offset in the file.
-     * @param resource      The file path of the bookmark.
-     * @param line_column   The line/column of the bookmark.
+     * @param project   The project name, or an empty string for the files not in a project.
+     *
+     * @return  The named bookmark index, or null if no project is given.
      */
-    private void store_bookmark( int number,
-                                 int location,
-                                 String resource,
-                                 String line_column )
+    private Named_bookmark_index get_named_index( String project )
     {
-        Bookmark_info bmi = get_bookmark( number );
-        if( bmi != null )
+        if( project == null ) return null;
+
+        Named_bookmark_index named_index = m_named_indexes.get( project );
+        if( named_index == null )
         {
-            bmi.m_line_column = line_column;
-            bmi.m_offset = location;
-            bmi.m_resource = resource;
+            String file_name = project.isEmpty() ? EXTERNAL_INDEX_FILE_NAME :
+                    "project_" + URLEncoder.encode( project, StandardCharsets.UTF_8 ) + ".bin"; //$NON-NLS-1$ //$NON-NLS-2$
+            File directory = new File( Activator.getDefault().getStateLocation().toFile(), NAMED_BOOKMARKS_DIRECTORY );
 
-            return;
+            named_index = new Named_bookmark_index( new File( directory, file_name ), m_store_job );
+            m_named_indexes.put( project, named_index );
         }
 
-        bmi = new Bookmark_info( location, resource, line_column, number );
-        m_bookmarks.add( bmi );
+        return named_index;
     }
 
     /**
-     * Stores the bookmarks in preferences non-volatile storage.
+     * Gets the named bookmarks in an editor's file, reading its project's index if needed.
+     *
+     * @param editor    The editor.
+     * @param path      The editor's file path.
+     *
+     * @return  The named bookmarks in the file. Empty if none.
      */
-    private void store_bookmarks()
+    private List<Bookmark_info> get_named_bookmarks( IEditorPart editor,
+                                                     String path )
     {
-        Preferences preferences = InstanceScope.INSTANCE.getNode( Activator.PLUGIN_ID );
+        Named_bookmark_index named_index = get_named_index( get_editor_project( editor.getEditorInput() ) );
+        if( named_index == null ) return Collections.emptyList();
+
+        return named_index.get_bookmarks( path );
+    }
+
+    @SuppressWarnings( "unused" )
+    private void print_bookmarks()
+    {
+        StringBuilder message = new StringBuilder();
+        boolean no_bookmarks = true;
+        for( Bookmark_info bmi : get_bookmarks() )
+        {
+            no_bookmarks = false;
+            message.append( "\tBookmark " ); //$NON-NLS-1$
+            message.append( bmi.m_number );
+            message.append( " = [" + bmi.m_resource + //$NON-NLS-1$
+                            ", " + bmi.get_offset() + //$NON-NLS-1$
+                            ", " + bmi.get_line_column() + "]\n" ); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+
+        Activator.system_message( "get_stored_bookmarks:\n" + ( no_bookmarks ? //$NON-NLS-1$
+                "\tno stored bookmarks" : message.toString() ) ); //$NON-NLS-1$
+    }
+
+    /**
+     * Gets a bookmark for the given bookmark number.
+     *
+     * @param number    The bookmark number.
+     *
+     * @return  The bookmark with the given number or null if it does not exist.
+     */
+    private Bookmark_info get_bookmark( int number )
+    {
+        if( ( number < MIN_BOOKMARK_NUMBER ) || ( number > m_max_bookmark_number ) ) return null;
+
+        return m_bookmarks_by_number[number];
+    }
+
+    /**
+     * Gets all the bookmarks, in bookmark number order.
+     *
+     * @return  The bookmarks.
+     */
+    protected List<Bookmark_info> get_bookmarks()
+    {
+        List<Bookmark_info> bookmarks = new ArrayList<Bookmark_info>( m_bookmark_count );
+        for( int number = MIN_BOOKMARK_NUMBER; ( number <= m_max_bookmark_number ) && ( bookmarks.size() < m_bookmark_count ); number++ )
+        {
+            if( m_bookmarks_by_number[number] != null ) bookmarks.add( m_bookmarks_by_number[number] );
+        }
+
+        return bookmarks;
+    }
+
+    /**
+     * Gets the bookmarks in a file.
+     *
+     * @param resource  The file path.
+     *
+     * @return  The bookmarks in the file. Empty if none.
+     */
+    protected List<Bookmark_info> get_bookmarks( String resource )
+    {
+        return m_bookmarks_by_resource.get( resource );
+    }
+
+    /**
+     * Adds a bookmark to the indexes. There must not be a bookmark with its number already.
+     *
+     * @param bmi   The bookmark.
+     */
+    private void put_bookmark( Bookmark_info bmi )
+    {
+        m_bookmarks_by_number[bmi.m_number] = bmi;
+        m_bookmarks_by_resource.put( bmi.m_resource, bmi );
+        m_bookmark_count++;
+    }
+
+    /**
+     * Removes a bookmark from the indexes, writing back and removing its live position first.
+     *
+     * @param bmi   The bookmark.
+     */
+    private void unindex_bookmark( Bookmark_info bmi )
+    {
+        if( get_bookmark( bmi.m_number ) != bmi ) return;
+
+        bmi.remove_position();
+        m_bookmarks_by_number[bmi.m_number] = null;
+        m_bookmarks_by_resource.remove( bmi.m_resource, bmi );
+        m_bookmark_count--;
+    }
+
+    /**
+     * Removes a bookmark, and stores the bookmarks.
+     *
+     * @param bmi   The bookmark.
+     */
+    protected void remove_bookmark( Bookmark_info bmi )
+    {
+        unindex_bookmark( bmi );
+        schedule_store();
+    }
+
+    /**
+     * Removes all the bookmarks, and stores the bookmarks.
+     */
+    protected void remove_all_bookmarks()
+    {
+        for( Bookmark_info bmi : get_bookmarks() )
+        {
+            unindex_bookmark( bmi );
+        }
+        schedule_store();
+    }
+
+    /**
+     * Removes a named bookmark, writing back and removing its live position first, and
+     * appends the removal to its project's index.
+     *
+     * @param named_index   The index of the bookmark's project.
+     * @param bmi           The bookmark.
+     */
+    protected void remove_named_bookmark( Named_bookmark_index named_index,
+                                          Bookmark_info bmi )
+    {
+        if( named_index.get( bmi.get_name() ) != bmi ) return;
+
+        bmi.remove_position();
+        named_index.remove( bmi );
+    }
+
+    /**
+     * Removes all the named bookmarks of a project.
+     *
+     * @param named_index   The index of the project.
+     */
+    protected void remove_all_named_bookmarks( Named_bookmark_index named_index )
+    {
+        for( Bookmark_info bmi : new ArrayList<Bookmark_info>( named_index.get_bookmarks() ) )
+        {
+            remove_named_bookmark( named_index, bmi );
+        }
+    }
+
+    /**
+     * Copies the bookmarks, with their current offsets, for storing. In marker mode, the
+     * offsets of the bookmarks that are not open are first taken from their markers if the
+     * workspace moved them, so the stale offsets are not written over the markers.
+     *
+     * @return  The copy of the bookmarks, in bookmark number order.
+     */
+    private List<Bookmark_info> get_bookmarks_copy()
+    {
+        List<Bookmark_info> bookmarks = get_bookmarks();
+        for( int i = 0; i < bookmarks.size(); i++ )
+        {
+            Bookmark_info bmi = bookmarks.get( i );
+            if( m_marker_mode )
+            {
+                refresh_from_marker( bmi );
+                bmi.m_stored_offset = bmi.get_offset();
+            }
+
+            bookmarks.set( i, new Bookmark_info( bmi.get_offset(), bmi.m_resource, bmi.get_line_column(), bmi.m_number ) );
+        }
+
+        return bookmarks;
+    }
+
+    /**
+     * Hands a copy of the bookmarks to the store job, which stores them in the background.
+     */
+    private void schedule_store()
+    {
+        m_store_job.request( get_bookmarks_copy() );
+    }
+
+    /**
+     * Creates a new bookmark for the given bookmark number, or modifies the existing one.
+     * Places it in the bookmark list, and tracks it in the editor's document.
+     *
+     * @param number        The bookmark number.
+     * @param location      The bookmarks location/offset in the file.
+     * @param resource      The file path of the bookmark.
+     * @param editor        The editor, as given by the workbench, the bookmark is dropped in.
+     * @param text_editor   The text editor with the document.
+     */
+    private void store_bookmark( int number,
+                                 int location,
+                                 String resource,
+                                 IEditorPart editor,
+                                 ITextEditor text_editor )
+    {
+        Bookmark_info bmi = get_bookmark( number );
+        if( bmi != null ) unindex_bookmark( bmi );
+
+        bmi = new Bookmark_info( location, resource, null, number );
+        put_bookmark( bmi );
+
+        IDocument document = get_document( text_editor );
+        if( document != null ) add_position( bmi, editor, document );
+
+        schedule_store();
+    }
+
+    /**
+     * The position category of the bookmarks in the open documents.
+     */
+    private static final String POSITION_CATEGORY = Activator.PLUGIN_ID + ".bookmarks"; //$NON-NLS-1$
+
+    /**
+     * Moves the bookmark positions with the edits. Added to a document with the category.
+     * A bookmark is never deleted: one inside a replaced range keeps its distance from the
+     * start of the range, limited to the replacement text, so a deleted one moves to where
+     * the deletion was, and one in a document that is set as a whole, e.g. when reloaded,
+     * stays about where it was.
+     */
+    private final IPositionUpdater m_position_updater = new IPositionUpdater()
+    {
+        @Override
+        public void update( DocumentEvent event )
+        {
+            Position[] positions;
+            try
+            {
+                positions = event.getDocument().getPositions( POSITION_CATEGORY );
+            }
+            catch( BadPositionCategoryException exception )
+            {
+                return;
+            }
+
+            int offset = event.getOffset();
+            int length = event.getLength();
+            int text_length = ( event.getText() == null ) ? 0 : event.getText().length();
+
+            for( Position position : positions )
+            {
+                int position_offset = position.getOffset();
+                if( position_offset < offset ) continue;
+
+                if( position_offset >= ( offset + length ) )
+                {
+                    position.setOffset( position_offset + text_length - length );
+                }
+                else
+                {
+                    position.setOffset( offset + Math.min( position_offset - offset, text_length ) );
+                }
+            }
+        }
+    };
+
+    /**
+     * Writes the live offsets back when an editor with bookmarks is saved.
+     */
+    private final IPropertyListener m_save_listener = new IPropertyListener()
+    {
+        @Override
+        public void propertyChanged( Object source,
+                                     int property_id )
+        {
+            if( ( property_id != IWorkbenchPartConstants.PROP_DIRTY ) || !( source instanceof IEditorPart ) ) return;
+            if( ( (IEditorPart)source ).isDirty() ) return;
+
+            String resource = m_attached_resources.get( source );
+            if( resource == null ) return;
+
+            boolean written_back = false;
+            for( Bookmark_info bmi : get_bookmarks( resource ) )
+            {
+                if( bmi.m_editor != source ) continue;
+
+                bmi.write_back();
+                written_back = true;
+            }
+            if( written_back ) schedule_store();
+
+            Named_bookmark_index named_index = m_attached_named_indexes.get( source );
+            if( named_index == null ) return;
+
+            for( Bookmark_info bmi : named_index.get_bookmarks( resource ) )
+            {
+                if( bmi.m_editor != source ) continue;
+
+                bmi.write_back();
+                named_index.update( bmi );
+            }
+        }
+    };
+
+    /**
+     * Gets the document of a text editor.
+     *
+     * @param text_editor   The text editor.
+     *
+     * @return  The document, or null if not available.
+     */
+    private static IDocument get_document( ITextEditor text_editor )
+    {
+        IDocumentProvider provider = text_editor.getDocumentProvider();
+        if( provider == null ) return null;
+
+        return provider.getDocument( text_editor.getEditorInput() );
+    }
+
+    /**
+     * Registers a bookmark's live position in a document, adding the bookmark position
+     * category and updater to the document if needed.
+     *
+     * @param bmi       The bookmark.
+     * @param editor    The editor, as given by the workbench, with the document open.
+     * @param document  The document.
+     */
+    private void add_position( Bookmark_info bmi,
+                               IEditorPart editor,
+                               IDocument document )
+    {
+        if( !document.containsPositionCategory( POSITION_CATEGORY ) )
+        {
+            document.addPositionCategory( POSITION_CATEGORY );
+            document.addPositionUpdater( m_position_updater );
+        }
+
+        Position position = new Position( Math.max( 0, Math.min( bmi.m_offset, document.getLength() ) ) );
+        try
+        {
+            document.addPosition( POSITION_CATEGORY, position );
+        }
+        catch( BadLocationException | BadPositionCategoryException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": ", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return;
+        }
+
+        bmi.m_position = position;
+        bmi.m_document = document;
+        bmi.m_editor = editor;
+
+        if( m_attached_resources.put( editor, bmi.m_resource ) == null )
+        {
+            editor.addPropertyListener( m_save_listener );
+        }
+    }
+
+    /**
+     * Starts tracking the bookmarks of an editor's file in its document, so they move
+     * with the edits. Called when the text editor proxy first binds to the editor.
+     *
+     * @param editor        The editor, as given by the workbench.
+     * @param text_editor   The text editor with the document.
+     */
+    protected void attach( IEditorPart editor,
+                           ITextEditor text_editor )
+    {
+        String path = get_editor_file_path( editor );
+        if( path == null ) return;
+
+        List<Bookmark_info> named_bookmarks = get_named_bookmarks( editor, path );
+        if( get_bookmarks( path ).isEmpty() && named_bookmarks.isEmpty() ) return;
+
+        IDocument document = get_document( text_editor );
+        if( document == null ) return;
+
+        for( Bookmark_info bmi : Iterables.concat( get_bookmarks( path ), named_bookmarks ) )
+        {
+            if( bmi.m_position == null ) add_position( bmi, editor, document );
+        }
+
+        if( !named_bookmarks.isEmpty() )
+        {
+            m_attached_named_indexes.put( editor, get_named_index( get_editor_project( editor.getEditorInput() ) ) );
+        }
+    }
+
+    /**
+     * Stops tracking the bookmarks in an editor's document, writing their offsets back,
+     * and appending the moved named bookmarks to their index. Called when the editor
+     * is closed or its input changes.
+     *
+     * @param editor    The editor, as given by the workbench.
+     */
+    protected void detach( IEditorPart editor )
+    {
+        String resource = m_attached_resources.remove( editor );
+        if( resource == null ) return;
+
+        boolean written_back = false;
+        for( Bookmark_info bmi : get_bookmarks( resource ) )
+        {
+            if( bmi.m_editor != editor ) continue;
+
+            bmi.remove_position();
+            written_back = true;
+        }
+        if( written_back ) schedule_store();
+
+        Named_bookmark_index named_index = m_attached_named_indexes.remove( editor );
+        if( named_index != null )
+        {
+            for( Bookmark_info bmi : named_index.get_bookmarks( resource ) )
+            {
+                if( bmi.m_editor != editor ) continue;
+
+                bmi.remove_position();
+                named_index.update( bmi );
+            }
+        }
+
+        editor.removePropertyListener( m_save_listener );
+    }
+
+    /**
+     * Stores the bookmarks. In marker mode, the bookmarks in workspace files are stored as
+     * markers, and the others in the preferences. Otherwise all of them are stored in the
+     * preferences, and any markers are deleted. Called by the store job, and when disposed.
+     *
+     * @param bookmarks     A copy of the bookmarks.
+     */
+    protected void store_bookmarks( List<Bookmark_info> bookmarks )
+    {
+        List<Bookmark_info> marker_bookmarks = new ArrayList<Bookmark_info>();
+        Bookmark_info[] preference_bookmarks = new Bookmark_info[m_max_bookmark_number + 1];
+        for( Bookmark_info bmi : bookmarks )
+        {
+            if( m_marker_mode && ( get_workspace_file( bmi.m_resource ) != null ) )
+            {
+                marker_bookmarks.add( bmi );
+            }
+            else
+            {
+                preference_bookmarks[bmi.m_number] = bmi;
+            }
+        }
+
+        // Once marker mode is off and the markers are deleted, there is nothing to update.
+        if( m_has_markers && !store_markers( marker_bookmarks ) && !m_marker_mode ) m_has_markers = false;
+        store_preferences( preference_bookmarks );
+    }
+
+    /**
+     * Stores the bookmarks as markers on their workspace files, as a single workspace operation.
+     * Deletes the markers of any other bookmark numbers.
+     *
+     * @param bookmarks     The bookmarks in workspace files.
+     *
+     * @return  Error status. True if the markers could not be updated.
+     */
+    private boolean store_markers( List<Bookmark_info> bookmarks )
+    {
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        IWorkspaceRunnable runnable = ( IProgressMonitor monitor ) ->
+        {
+            HashMap<Integer, IMarker> markers = new HashMap<Integer, IMarker>();
+            for( IMarker marker : workspace.getRoot().findMarkers( MARKER_TYPE, false, IResource.DEPTH_INFINITE ) )
+            {
+                IMarker duplicate_marker = markers.put( marker.getAttribute( NUMBER_ATTRIBUTE, -1 ), marker );
+                if( duplicate_marker != null ) duplicate_marker.delete();
+            }
+
+            for( Bookmark_info bmi : bookmarks )
+            {
+                IFile file = get_workspace_file( bmi.m_resource );
+                if( file == null ) continue;
+
+                IMarker marker = markers.remove( bmi.m_number );
+                if( ( marker != null ) && !file.equals( marker.getResource() ) )
+                {
+                    marker.delete();
+                    marker = null;
+                }
+
+                if( marker == null )
+                {
+                    marker = file.createMarker( MARKER_TYPE );
+                    marker.setAttribute( NUMBER_ATTRIBUTE, bmi.m_number );
+                    marker.setAttribute( IMarker.MESSAGE, String.format( Messages.bookmarks_support_24, bmi.m_number ) );
+                }
+
+                if( marker.getAttribute( IMarker.CHAR_START, -1 ) != bmi.m_offset )
+                {
+                    marker.setAttributes( new String[] { IMarker.CHAR_START, IMarker.CHAR_END },
+                                          new Object[] { bmi.m_offset, bmi.m_offset } );
+                }
+            }
+
+            for( IMarker marker : markers.values() )
+            {
+                marker.delete();
+            }
+        };
+
+        try
+        {
+            workspace.run( runnable, null, IWorkspace.AVOID_UPDATE, null );
+        }
+        catch( CoreException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": ", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Stores the bookmarks in preferences non-volatile storage, and flushes the preferences
+     * so the bookmarks survive a crash.
+     *
+     * @param bookmarks     The bookmarks, indexed by bookmark number.
+     */
+    private void store_preferences( Bookmark_info[] bookmarks )
+    {
+        Preferences preferences = InstanceScope.INSTANCE.getNode( Activator.PLUGIN_ID );
         if( preferences == null ) return;
 
-        Preferences bookmarks = preferences.node( "bookmarks" ); //$NON-NLS-1$
+        Preferences bookmarks_node = preferences.node( "bookmarks" ); //$NON-NLS-1$
 
-        for( int number = MIN_BOOKMARK_NUMBER; number <= MAX_BOOKMARK_NUMBER; number++ )
+        for( int number = MIN_BOOKMARK_NUMBER; number <= m_max_bookmark_number; number++ )
         {
-            Bookmark_info bmi = get_bookmark( number );
+            Bookmark_info bmi = bookmarks[number];
             if( bmi != null )
             {
                 String bookmark_serialized = Bookmark_info.serialize( bmi );
 
                 // Make sure the value has changed before committing it to storage.
-                String stored_bookmark_serialized = bookmarks.get( String.valueOf( number ), "" ); //$NON-NLS-1$
+                String stored_bookmark_serialized = bookmarks_node.get( String.valueOf( number ), "" ); //$NON-NLS-1$
 
                 if( !bookmark_serialized.equals( stored_bookmark_serialized ) )
                 {
-                    bookmarks.put( String.valueOf( number ), bookmark_serialized );
+                    bookmarks_node.put( String.valueOf( number ), bookmark_serialized );
                 }
             }
             else
             {
                 // No bookmark for this number, so clear the key.
-                bookmarks.remove( String.valueOf( number ) );
+                bookmarks_node.remove( String.valueOf( number ) );
             }
         }
+
+        try
+        {
+            bookmarks_node.flush();
+        }
+        catch( BackingStoreException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": ", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+        }
     }
 
     /**
@@ -390,7 +1363,7 @@ public class Bookmarks_support
     protected void drop_bookmark( int number,
                                   IEditorPart editor ) throws IllegalArgumentException
     {
-        if( ( number < MIN_BOOKMARK_NUMBER ) || ( number > MAX_BOOKMARK_NUMBER ) )
+        if( ( number < MIN_BOOKMARK_NUMBER ) || ( number > m_max_bookmark_number ) )
         {
             throw( new IllegalArgumentException( " Bookmark number " + number + " is out of range." ) ); //$NON-NLS-1$ //$NON-NLS-2$
         }
@@ -399,24 +1372,17 @@ public class Bookmarks_support
         String path = get_editor_file_path( editor );
         if( path == null ) return;
 
+        Editor_binding binding = m_text_editor_proxy.get_editor_binding();
+        if( binding == null ) return;
+
         int current_caret_offset = m_text_editor_proxy.get_model_current_caret_offset();
         if( current_caret_offset == -1 ) return;
-        int current_line_index = m_text_editor_proxy.get_model_current_line_index();
-        if( current_line_index == -1 ) return;
-        int caret_offset_at_current_line = m_text_editor_proxy.get_model_caret_offset_at_current_line();
-        if( caret_offset_at_current_line == -1 ) return;
-
-        int current_column = current_caret_offset - caret_offset_at_current_line;
-
-        StringBuilder line_column = new StringBuilder();
-        line_column.append( current_line_index + 1 );
-        line_column.append( Messages.bookmarks_support_18 );
-        line_column.append( current_column + 1 );
 
         store_bookmark( number,
                         current_caret_offset,
                         path,
-                        line_column.toString() );
+                        binding.get_editor(),
+                        binding.get_text_editor() );
     }
 
     /**
@@ -426,7 +1392,7 @@ public class Bookmarks_support
      */
     protected void jump_bookmark( IWorkbenchWindow workbench_window )
     {
-        if( m_bookmarks.size() == 0 )
+        if( m_bookmark_count == 0 )
         {
             Activator.set_status_line( Messages.bookmarks_support_19 );
             return;
@@ -436,8 +1402,10 @@ public class Bookmarks_support
                                                               m_text_editor_proxy.get_active_editor(),
                                                               MIN_BOOKMARK_NUMBER,
                                                               MIN_BOOKMARK_NUMBER,
-                                                              MAX_BOOKMARK_NUMBER,
-                                                              Messages.jump_bookmark_number_dialog_prompt_format );
+                                                              m_max_bookmark_number,
+                                                              String.format( Messages.jump_bookmark_number_dialog_prompt_format,
+                                                                             MIN_BOOKMARK_NUMBER,
+                                                                             m_max_bookmark_number ) );
         if( dialog.open() == Window.OK )
         {
             int number = dialog.get_number();
@@ -451,8 +1419,93 @@ public class Bookmarks_support
     }
 
     /**
-     * Based on the given bookmark, finds the matching editor, activates it,
-     * and jumps to the model offset.
+     * Opens a dialog to obtain a name, then creates a named bookmark with it in the given editor
+     * at the current cursor/caret location. The bookmark is appended to its project's index.
+     *
+     * @param editor     The editor.
+     */
+    protected void drop_named_bookmark( IEditorPart editor )
+    {
+        Editor_binding binding = m_text_editor_proxy.get_editor_binding();
+        String path = get_editor_file_path( editor );
+        if( ( binding == null ) || ( path == null ) )
+        {
+            Activator.beep();
+            return;
+        }
+
+        Named_bookmark_index named_index = get_named_index( get_editor_project( editor.getEditorInput() ) );
+        if( named_index == null )
+        {
+            Activator.beep();
+            return;
+        }
+
+        int current_caret_offset = m_text_editor_proxy.get_model_current_caret_offset();
+        if( current_caret_offset == -1 ) return;
+
+        Get_a_string_dialog dialog = new Get_a_string_dialog( Activator.get_shell(),
+                                                              m_text_editor_proxy.get_active_editor(),
+                                                              named_index.new_name(),
+                                                              Messages.drop_named_bookmark_dialog_prompt_format );
+        if( dialog.open() != Window.OK ) return;
+
+        String name = dialog.get_string();
+        if( name.isEmpty() )
+        {
+            Activator.beep();
+            return;
+        }
+
+        Bookmark_info bmi = named_index.get( name );
+        if( bmi != null ) bmi.remove_position();
+
+        bmi = named_index.put( name, path, current_caret_offset );
+
+        IDocument document = get_document( binding.get_text_editor() );
+        if( document == null ) return;
+
+        add_position( bmi, binding.get_editor(), document );
+        if( bmi.m_editor != null ) m_attached_named_indexes.put( bmi.m_editor, named_index );
+    }
+
+    /**
+     * Opens a dialog to obtain a bookmark name, then jumps to the bookmark with that name
+     * in the project of the given editor.
+     *
+     * @param workbench_window  The current workbench window.
+     * @param editor            The editor.
+     */
+    protected void jump_named_bookmark( IWorkbenchWindow workbench_window,
+                                        IEditorPart editor )
+    {
+        Named_bookmark_index named_index = get_named_index( get_editor_project( editor.getEditorInput() ) );
+        if( ( named_index == null ) || named_index.get_bookmarks().isEmpty() )
+        {
+            Activator.set_status_line( Messages.bookmarks_support_19 );
+            return;
+        }
+
+        Get_a_string_dialog dialog = new Get_a_string_dialog( Activator.get_shell(),
+                                                              m_text_editor_proxy.get_active_editor(),
+                                                              "", //$NON-NLS-1$
+                                                              Messages.jump_named_bookmark_dialog_prompt_format );
+        if( dialog.open() != Window.OK ) return;
+
+        Bookmark_info bmi = named_index.get( dialog.get_string() );
+        if( bmi == null )
+        {
+            Activator.set_status_line( String.format( Messages.bookmarks_support_23, dialog.get_string() ) );
+            Activator.beep();
+            return;
+        }
+
+        find_bookmark_and_goto_it( workbench_window, bmi );
+    }
+
+    /**
+     * Based on the given bookmark, activates the editor of its file, opening the file
+     * if it is not open, and jumps to the model offset.
      *
      * @param workbench_window  The current workbench window.
      * @param bmi   The bookmark to locate and go to.
@@ -460,36 +1513,75 @@ public class Bookmarks_support
     private void find_bookmark_and_goto_it( IWorkbenchWindow workbench_window,
                                             Bookmark_info bmi )
     {
-        IWorkbench workbench = workbench_window.getWorkbench();
+        IWorkbenchPage workbench_page = workbench_window.getActivePage();
+        if( workbench_page == null ) return;
 
-        IEditorReference[] editor_references =
-                workbench.getActiveWorkbenchWindow().getActivePage().getEditorReferences();
-        for( IEditorReference editor_reference : editor_references )
+        try
         {
-            try
+            // The editor found is only used if it is in this window's page, otherwise the
+            // file is opened, or its editor found, in this page, so the proxy stays bound
+            // to this window.
+            IEditorReference editor_reference = m_editors_by_resource.get( bmi.m_resource );
+            IEditorPart editor_part = ( ( editor_reference != null ) && ( editor_reference.getPage() == workbench_page ) ) ?
+                    editor_reference.getEditor( true ) : null;
+            if( editor_part != null )
+            {
+                workbench_page.activate( editor_part );
+            }
+            else if( open_editor( workbench_page, bmi.m_resource ) )
             {
-                IEditorInput editor_input = editor_reference.getEditorInput();
+                return;
+            }
 
-                String path = get_editor_file_path( editor_input );
-                if( path == null ) continue;
+            IEditorPart active_editor = Activator.get_active_editor( workbench_window );
+            m_text_editor_proxy.set_editor( workbench_window, active_editor );
 
-                if( path.equals( bmi.m_resource ) )
-                {
-                    IEditorPart editor_part = editor_reference.getEditor( true );
-                    editor_reference.getPage().activate( editor_part );
-
-                    IEditorPart active_editor = Activator.get_active_editor( workbench_window );
-                    m_text_editor_proxy.set_editor( workbench_window, active_editor );
+            m_text_editor_proxy.set_model_current_caret_offset( bmi.get_offset() );
+        }
+        catch( Exception exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": ", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
 
-                    m_text_editor_proxy.set_model_current_caret_offset( bmi.m_offset );
-                }
+    /**
+     * Opens a file in an editor and activates it. A workspace file is opened as a workspace
+     * resource, any other file is opened from the local file system.
+     *
+     * @param workbench_page    The page to open the editor in.
+     * @param resource          The file path.
+     *
+     * @return  Error status. True if the file could not be opened.
+     */
+    private boolean open_editor( IWorkbenchPage workbench_page,
+                                 String resource )
+    {
+        try
+        {
+            IFile file = ResourcesPlugin.getWorkspace().getRoot().getFileForLocation( Path.fromPortableString( resource ) );
+            if( ( file != null ) && file.exists() )
+            {
+                IDE.openEditor( workbench_page, file, true );
+                return false;
             }
-            catch( Exception exception )
+
+            File local_file = new File( resource );
+            if( !local_file.isFile() )
             {
-                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": ", exception ); //$NON-NLS-1$ //$NON-NLS-2$
-                continue;
+                Activator.beep();
+                return true;
             }
+
+            IDE.openEditorOnFileStore( workbench_page, EFS.getLocalFileSystem().fromLocalFile( local_file ) );
+        }
+        catch( PartInitException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not open <" + resource + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return true;
         }
+
+        return false;
     }
 
     /**
@@ -501,33 +1593,33 @@ public class Bookmarks_support
     protected void open_bookmarks_dialog( IWorkbenchWindow workbench_window,
                                           int max_width_in_chars )
     {
-        if( m_bookmarks.size() == 0 )
+        IEditorPart active_editor = m_text_editor_proxy.get_active_editor();
+        if( active_editor == null ) return;
+
+        // The named bookmarks of the active editor's project are listed after the numbered ones.
+        Named_bookmark_index named_index = get_named_index( get_editor_project( active_editor.getEditorInput() ) );
+        if( ( m_bookmark_count == 0 ) && ( ( named_index == null ) || named_index.get_bookmarks().isEmpty() ) )
         {
             Activator.set_status_line( Messages.bookmarks_support_22 );
             return;
         }
 
-        IEditorPart active_editor = m_text_editor_proxy.get_active_editor();
-        if( active_editor == null ) return;
-
         Bookmark_dialog dialog = new Bookmark_dialog( workbench_window.getShell(),
                                                       active_editor,
-                                                      m_bookmarks,
+                                                      this,
+                                                      named_index,
                                                       max_width_in_chars );
 
-        int selected_bookmark_number = -1;
+        Bookmark_info bmi = null;
         if( dialog.open() == Window.OK )
         {
-            selected_bookmark_number = dialog.get_selected_bookmark_number();
+            bmi = dialog.get_selected_bookmark();
         }
 
         IWorkbenchPage workbench_page = workbench_window.getActivePage();
         if( workbench_page == null ) return;
         workbench_page.activate( active_editor );
 
-        if( selected_bookmark_number == -1 ) return;
-
-        Bookmark_info bmi = get_bookmark( selected_bookmark_number );
         if( bmi != null )
         {
             find_bookmark_and_goto_it( workbench_window, bmi );
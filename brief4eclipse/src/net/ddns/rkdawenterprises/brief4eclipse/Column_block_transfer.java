@@ -0,0 +1,117 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.io.IOException;
+
+import org.eclipse.swt.dnd.ByteArrayTransfer;
+import org.eclipse.swt.dnd.TransferData;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Scrap_support.Scrap_item;
+
+/**
+ * Clipboard type for column mode scrap items, so a block keeps its rows and width when it
+ * is pasted in another instance of the plug-in. Plain text can't tell a block from lines.
+ *
+ * The contents are the column mode scrap item encoded by Scrap_codec, which holds the
+ * block's width in characters, its number of rows, and the rows separated by line delimiters.
+ */
+public class Column_block_transfer extends ByteArrayTransfer
+{
+    /**
+     * The name of the clipboard type.
+     */
+    private static final String TYPE_NAME = "net.ddns.rkdawenterprises.brief4eclipse.column_block"; //$NON-NLS-1$
+
+    /**
+     * The registered identifier of the clipboard type.
+     */
+    private static final int TYPE_ID = registerType( TYPE_NAME );
+
+    /**
+     * The single instance.
+     */
+    private static final Column_block_transfer m_instance = new Column_block_transfer();
+
+    /**
+     * Singleton, use get_instance().
+     */
+    private Column_block_transfer() {}
+
+    /**
+     * Gets the single instance.
+     *
+     * @return  The instance.
+     */
+    public static Column_block_transfer get_instance()
+    {
+        return m_instance;
+    }
+
+    @Override
+    protected int[] getTypeIds()
+    {
+        return new int[] { TYPE_ID };
+    }
+
+    @Override
+    protected String[] getTypeNames()
+    {
+        return new String[] { TYPE_NAME };
+    }
+
+    @Override
+    protected void javaToNative( Object object,
+                                 TransferData transfer_data )
+    {
+        if( !( object instanceof Scrap_item ) || !( (Scrap_item)object ).is_column_content() ) return;
+
+        try
+        {
+            super.javaToNative( Scrap_codec.encode( (Scrap_item)object ), transfer_data );
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not encode the column block", exception ); //$NON-NLS-1$
+        }
+    }
+
+    @Override
+    protected Object nativeToJava( TransferData transfer_data )
+    {
+        Object bytes = super.nativeToJava( transfer_data );
+        if( !( bytes instanceof byte[] ) ) return null;
+
+        try
+        {
+            Scrap_item item = Scrap_codec.decode( (byte[])bytes );
+            if( !item.is_column_content() ) return null;
+
+            return item;
+        }
+        catch( IOException exception )
+        {
+            return null;
+        }
+    }
+
+    @Override
+    protected boolean validate( Object object )
+    {
+        return( ( object instanceof Scrap_item ) && ( (Scrap_item)object ).is_column_content() );
+    }
+}
@@ -0,0 +1,208 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.eclipse.core.commands.ExecutionEvent;
+
+/**
+ * Maps the command IDs defined in plugin.xml to their handlers. The handlers are
+ * registered once when the plug-in starts, so dispatching a command is a single
+ * lookup however many commands there are. Each handler keeps its own latency histogram.
+ */
+public class Command_registry
+{
+    /**
+     * The prefix of all of the plug-in's command IDs.
+     */
+    public static final String COMMAND_ID_PREFIX = "net.ddns.rkdawenterprises.brief4eclipse.commands."; //$NON-NLS-1$
+
+    /**
+     * The action of a command.
+     */
+    public interface i_command_action
+    {
+        /**
+         * Performs the command.
+         *
+         * @param event     The execution event, for the command parameters.
+         */
+        public void execute( ExecutionEvent event );
+    }
+
+    /**
+     * A registered command, with its latencies.
+     */
+    public static class Command_handler
+    {
+        /**
+         * The full command ID.
+         */
+        private final String m_command_id;
+
+        /**
+         * Indicates the command works on the active text editor, so the text editor proxy
+         * has to be updated with the active editor first.
+         */
+        private final boolean m_uses_editor;
+
+        /**
+         * The action of the command.
+         */
+        private final i_command_action m_action;
+
+        /**
+         * The latencies of the command's executions.
+         */
+        private final Latency_histogram m_latency = new Latency_histogram();
+
+        /**
+         * Creates the handler.
+         *
+         * @param command_id    The full command ID.
+         * @param uses_editor   True if the command works on the active text editor.
+         * @param action        The action of the command.
+         */
+        private Command_handler( String command_id,
+                                 boolean uses_editor,
+                                 i_command_action action )
+        {
+            m_command_id = command_id;
+            m_uses_editor = uses_editor;
+            m_action = action;
+        }
+
+        /**
+         * Performs the command and records how long it took.
+         *
+         * @param event     The execution event, for the command parameters.
+         * @param start     The System.nanoTime() when the key binding handler was called,
+         *                  so the latency includes updating the text editor proxy.
+         */
+        public void execute( ExecutionEvent event,
+                             long start )
+        {
+            try
+            {
+                m_action.execute( event );
+            }
+            finally
+            {
+                m_latency.record( System.nanoTime() - start );
+            }
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  The full command ID.
+         */
+        public String get_command_id()
+        {
+            return m_command_id;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  True if the command works on the active text editor.
+         */
+        public boolean uses_editor()
+        {
+            return m_uses_editor;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  The latencies of the command's executions.
+         */
+        public Latency_histogram get_latency()
+        {
+            return m_latency;
+        }
+    }
+
+    /**
+     * The handlers, by full command ID.
+     */
+    private final HashMap<String, Command_handler> m_handlers = new HashMap<String, Command_handler>();
+
+    /**
+     * Registers a command.
+     *
+     * @param command_name  The command ID without the plug-in's prefix.
+     * @param uses_editor   True if the command works on the active text editor.
+     * @param action        The action of the command.
+     */
+    public void register( String command_name,
+                          boolean uses_editor,
+                          i_command_action action )
+    {
+        String command_id = COMMAND_ID_PREFIX + command_name;
+        m_handlers.put( command_id, new Command_handler( command_id, uses_editor, action ) );
+    }
+
+    /**
+     * Gets the handler of a command.
+     *
+     * @param command_id    The full command ID.
+     *
+     * @return  The handler, or null if the command is not registered.
+     */
+    public Command_handler get( String command_id )
+    {
+        return m_handlers.get( command_id );
+    }
+
+    /**
+     * Gets all the handlers, for reporting their latencies.
+     *
+     * @return  The handlers.
+     */
+    public List<Command_handler> get_handlers()
+    {
+        return new ArrayList<Command_handler>( m_handlers.values() );
+    }
+
+    /**
+     * Gets a command's integer parameter.
+     *
+     * @param event             The execution event.
+     * @param parameter_name    The parameter ID without the command's ID.
+     *
+     * @return  The parameter value, or -1 if missing or not a number.
+     */
+    public static int get_integer_parameter( ExecutionEvent event,
+                                             String parameter_name )
+    {
+        String parameter_id = event.getCommand().getId() + "." + parameter_name; //$NON-NLS-1$
+        String value = event.getParameter( parameter_id );
+        if( value == null ) return -1;
+
+        try
+        {
+            return Integer.parseInt( value.trim() );
+        }
+        catch( NumberFormatException exception )
+        {
+            return -1;
+        }
+    }
+}
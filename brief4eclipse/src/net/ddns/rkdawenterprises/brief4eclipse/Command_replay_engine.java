@@ -0,0 +1,361 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.awt.AWTException;
+
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.jface.bindings.Binding;
+import org.eclipse.jface.bindings.keys.KeySequence;
+import org.eclipse.jface.bindings.keys.KeyStroke;
+import org.eclipse.jface.bindings.keys.ParseException;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.handlers.IHandlerService;
+import org.eclipse.ui.keys.IBindingService;
+
+/**
+ * Replays a captured key combination a number of times without going through the OS.
+ *
+ * The key combination is resolved once, to either the Eclipse command it is bound to
+ * or the StyledText action it is bound to, and then that is invoked in-process
+ * as many times as requested. Only keys that have no binding at all fall back to
+ * simulating the key presses with the AWT robot.
+ */
+public class Command_replay_engine
+{
+    /**
+     * Reference to the text editor proxy, which is the parent. Used to get the active editor
+     * and its styled text.
+     */
+    private Text_editor_proxy m_text_editor_proxy = null;
+
+    /**
+     * The key mapper for the robot fallback. Only created when first needed.
+     */
+    private SWT_to_AWT_key_helper m_swt_vk_key_mapper = null;
+
+    /**
+     * The ways a key combination can be replayed, from fastest to slowest.
+     */
+    public enum REPLAY_TYPE
+    {
+        COMMAND,
+        WIDGET_ACTION,
+        ROBOT
+    }
+
+    /**
+     * A key combination resolved to what it will actually do when replayed.
+     */
+    public static class Resolved_key
+    {
+        /**
+         * How the key combination will be replayed.
+         */
+        protected REPLAY_TYPE m_type = REPLAY_TYPE.ROBOT;
+
+        /**
+         * The SWT modifier bits of the key combination.
+         */
+        protected int m_state_mask = 0;
+
+        /**
+         * The SWT key code of the key combination.
+         */
+        protected int m_key_code = 0;
+
+        /**
+         * The bound Eclipse command. Only valid for the COMMAND type.
+         */
+        protected ParameterizedCommand m_command = null;
+
+        /**
+         * The bound StyledText action, one of the ST.* constants. Only valid for the WIDGET_ACTION type.
+         */
+        protected int m_action = SWT.NULL;
+
+        /**
+         * Creates a resolved key.
+         *
+         * @param type          How the key combination will be replayed.
+         * @param state_mask    The SWT modifier bits of the key combination.
+         * @param key_code      The SWT key code of the key combination.
+         */
+        protected Resolved_key( REPLAY_TYPE type,
+                                int state_mask,
+                                int key_code )
+        {
+            m_type = type;
+            m_state_mask = state_mask;
+            m_key_code = key_code;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  How the key combination will be replayed.
+         */
+        public REPLAY_TYPE get_type()
+        {
+            return m_type;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  The bound command's ID, or null if not bound to a command.
+         */
+        public String get_command_id()
+        {
+            if( m_command == null ) return null;
+            return m_command.getId();
+        }
+
+        /**
+         * Indicates the replay happens synchronously within the plug-in, as opposed to
+         * key events that are queued to the OS and processed later.
+         *
+         * @return  True if replayed in-process.
+         */
+        public boolean is_in_process()
+        {
+            return( m_type != REPLAY_TYPE.ROBOT );
+        }
+    }
+
+    /**
+     * Creates the replay engine.
+     *
+     * @param text_editor_proxy     The text editor proxy, which is the parent of this object.
+     */
+    protected Command_replay_engine( Text_editor_proxy text_editor_proxy )
+    {
+        m_text_editor_proxy = text_editor_proxy;
+    }
+
+    /**
+     * Resolves the given key combination to what it is bound to in the active editor.
+     * The workbench key bindings take precedence, just like when the key is typed,
+     * followed by the styled text's own key bindings.
+     *
+     * @param state_mask    The SWT modifier bits of the key combination.
+     * @param key_code      The SWT key code of the key combination.
+     *
+     * @return  The resolved key. Never null, the robot is the last resort.
+     */
+    public Resolved_key resolve( int state_mask,
+                                 int key_code )
+    {
+        state_mask &= SWT.MODIFIER_MASK;
+
+        ParameterizedCommand command = find_bound_command( state_mask, key_code );
+        if( command != null )
+        {
+            Resolved_key resolved_key = new Resolved_key( REPLAY_TYPE.COMMAND, state_mask, key_code );
+            resolved_key.m_command = command;
+            return resolved_key;
+        }
+
+        StyledText styled_text = m_text_editor_proxy.get_styled_text();
+        if( styled_text != null )
+        {
+            int action = styled_text.getKeyBinding( key_code | state_mask );
+            if( action != SWT.NULL )
+            {
+                Resolved_key resolved_key = new Resolved_key( REPLAY_TYPE.WIDGET_ACTION, state_mask, key_code );
+                resolved_key.m_action = action;
+                return resolved_key;
+            }
+        }
+
+        return( new Resolved_key( REPLAY_TYPE.ROBOT, state_mask, key_code ) );
+    }
+
+    /**
+     * Looks up the workbench command bound to the given key combination in the active editor's context.
+     *
+     * @param state_mask    The SWT modifier bits of the key combination.
+     * @param key_code      The SWT key code of the key combination.
+     *
+     * @return  The bound command, or null if there is no binding.
+     */
+    private ParameterizedCommand find_bound_command( int state_mask,
+                                                     int key_code )
+    {
+        IEditorPart active_editor = m_text_editor_proxy.get_active_editor();
+        if( active_editor == null ) return null;
+
+        IBindingService binding_service = active_editor.getSite().getService( IBindingService.class );
+        if( binding_service == null ) return null;
+
+        // Key bindings are always defined with upper case letters.
+        int natural_key = key_code;
+        if( ( ( natural_key & SWT.KEYCODE_BIT ) == 0 ) && Character.isLetter( natural_key ) )
+        {
+            natural_key = Character.toUpperCase( natural_key );
+        }
+
+        KeySequence key_sequence = KeySequence.getInstance( KeyStroke.getInstance( state_mask, natural_key ) );
+        Binding binding = binding_service.getPerfectMatch( key_sequence );
+        if( binding == null ) return null;
+
+        return binding.getParameterizedCommand();
+    }
+
+    /**
+     * Replays the resolved key combination the given number of times.
+     *
+     * @param resolved_key  The key combination resolved by resolve().
+     * @param count         The number of times to replay.
+     *
+     * @return  Error status. True if an error occurs.
+     */
+    public boolean replay( Resolved_key resolved_key,
+                           int count )
+    {
+        switch( resolved_key.m_type )
+        {
+            case COMMAND:
+            {
+                return replay_command( resolved_key, count );
+            }
+
+            case WIDGET_ACTION:
+            {
+                StyledText styled_text = m_text_editor_proxy.get_styled_text();
+                for( int i = 0; i < count; i++ )
+                {
+                    styled_text.invokeAction( resolved_key.m_action );
+                }
+
+                return false;
+            }
+
+            case ROBOT:
+            default:
+            {
+                return replay_robot( resolved_key, count );
+            }
+        }
+    }
+
+    /**
+     * Executes the bound command the given number of times through the active editor's handler service.
+     *
+     * @param resolved_key  The key combination resolved to a command.
+     * @param count         The number of times to execute.
+     *
+     * @return  Error status. True if an error occurs.
+     */
+    private boolean replay_command( Resolved_key resolved_key,
+                                    int count )
+    {
+        IHandlerService handler_service =
+                m_text_editor_proxy.get_active_editor().getSite().getService( IHandlerService.class );
+
+        try
+        {
+            for( int i = 0; i < count; i++ )
+            {
+                handler_service.executeCommand( resolved_key.m_command, null );
+            }
+        }
+        catch( Exception exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Command <" + resolved_key.m_command.getId() + "> could not be executed.", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Simulates the key presses the given number of times. Only used for keys that have no binding.
+     *
+     * @param resolved_key  The unbound key combination.
+     * @param count         The number of times to press the keys.
+     *
+     * @return  Error status. True if an error occurs.
+     */
+    private boolean replay_robot( Resolved_key resolved_key,
+                                  int count )
+    {
+        if( m_swt_vk_key_mapper == null )
+        {
+            try
+            {
+                m_swt_vk_key_mapper = new SWT_to_AWT_key_helper();
+            }
+            catch( AWTException exception )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Could not create the key robot.", exception ); //$NON-NLS-1$
+                return true;
+            }
+        }
+
+        int state_mask = resolved_key.m_state_mask;
+
+        for( int i = 0; i < count; i++ )
+        {
+            try
+            {
+                if( ( state_mask & SWT.CTRL ) != 0 )
+                {
+                    m_swt_vk_key_mapper.press_key( SWT.CTRL );
+                }
+
+                if( ( state_mask & SWT.ALT ) != 0 )
+                {
+                    m_swt_vk_key_mapper.press_key( SWT.ALT );
+                }
+
+                if( ( state_mask & SWT.SHIFT ) != 0 )
+                {
+                    m_swt_vk_key_mapper.press_key( SWT.SHIFT );
+                }
+
+                m_swt_vk_key_mapper.press_key( resolved_key.m_key_code );
+                m_swt_vk_key_mapper.release_key( resolved_key.m_key_code );
+
+                if( ( state_mask & SWT.SHIFT ) != 0 )
+                {
+                    m_swt_vk_key_mapper.release_key( SWT.SHIFT );
+                }
+
+                if( ( state_mask & SWT.ALT ) != 0 )
+                {
+                    m_swt_vk_key_mapper.release_key( SWT.ALT );
+                }
+
+                if( ( state_mask & SWT.CTRL ) != 0 )
+                {
+                    m_swt_vk_key_mapper.release_key( SWT.CTRL );
+                }
+            }
+            catch( IllegalArgumentException | ParseException exception )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Key <" + Integer.toHexString( resolved_key.m_key_code ) + "> not supported.", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,170 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import org.eclipse.jface.action.IStatusLineManager;
+import org.eclipse.jface.text.IRewriteTarget;
+import org.eclipse.jface.text.ITextOperationTarget;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.ITextViewerExtension5;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.texteditor.ITextEditor;
+
+/**
+ * The parts of an editor the proxy works with, adapted once when the editor is first
+ * used and then kept until the editor is closed, changes its input or changes its
+ * active page. Commands then use these instead of adapting the editor on every keystroke.
+ */
+public class Editor_binding
+{
+    /**
+     * The editor as given by the workbench. May be a multi-page editor.
+     */
+    private final IEditorPart m_editor;
+
+    /**
+     * The text editor. For a multi-page editor, the active page's editor.
+     */
+    private final ITextEditor m_text_editor;
+
+    /**
+     * The styled text of the text editor.
+     */
+    private final StyledText m_styled_text;
+
+    /**
+     * The text viewer of the text editor, or null if it does not provide one.
+     */
+    private final ITextViewer m_text_viewer;
+
+    /**
+     * The text viewer as the widget/model mapping extension, or null if not supported.
+     */
+    private final ITextViewerExtension5 m_text_viewer_extension5;
+
+    /**
+     * The rewrite target of the text editor, or null if it does not provide one.
+     */
+    private final IRewriteTarget m_rewrite_target;
+
+    /**
+     * The status line of the editor.
+     */
+    private final IStatusLineManager m_status_line_manager;
+
+    /**
+     * Adapts the editor into its parts.
+     *
+     * @param editor        The editor as given by the workbench.
+     * @param text_editor   The text editor. For a multi-page editor, the active page's editor.
+     *
+     * @throws IllegalArgumentException If the text editor does not have a styled text.
+     */
+    public Editor_binding( IEditorPart editor,
+                           ITextEditor text_editor ) throws IllegalArgumentException
+    {
+        m_editor = editor;
+        m_text_editor = text_editor;
+
+        Control control = text_editor.getAdapter( Control.class );
+        if( !( control instanceof StyledText ) )
+        {
+            throw new IllegalArgumentException( "Unsupported editor" ); //$NON-NLS-1$
+        }
+        m_styled_text = (StyledText)control;
+
+        ITextOperationTarget target = text_editor.getAdapter( ITextOperationTarget.class );
+        m_text_viewer = ( target instanceof ITextViewer ) ? (ITextViewer)target : null;
+        m_text_viewer_extension5 = ( m_text_viewer instanceof ITextViewerExtension5 ) ?
+                (ITextViewerExtension5)m_text_viewer : null;
+
+        m_rewrite_target = text_editor.getAdapter( IRewriteTarget.class );
+
+        m_status_line_manager = editor.getEditorSite().getActionBars().getStatusLineManager();
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The editor as given by the workbench. May be a multi-page editor.
+     */
+    public IEditorPart get_editor()
+    {
+        return m_editor;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The text editor. For a multi-page editor, the active page's editor.
+     */
+    public ITextEditor get_text_editor()
+    {
+        return m_text_editor;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The styled text of the text editor.
+     */
+    public StyledText get_styled_text()
+    {
+        return m_styled_text;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The text viewer of the text editor, or null if it does not provide one.
+     */
+    public ITextViewer get_text_viewer()
+    {
+        return m_text_viewer;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The text viewer as the widget/model mapping extension, or null if not supported.
+     */
+    public ITextViewerExtension5 get_text_viewer_extension5()
+    {
+        return m_text_viewer_extension5;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The rewrite target of the text editor, or null if it does not provide one.
+     */
+    public IRewriteTarget get_rewrite_target()
+    {
+        return m_rewrite_target;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The status line of the editor.
+     */
+    public IStatusLineManager get_status_line_manager()
+    {
+        return m_status_line_manager;
+    }
+}
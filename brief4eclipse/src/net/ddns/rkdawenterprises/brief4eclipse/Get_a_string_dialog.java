@@ -0,0 +1,90 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.IEditorPart;
+
+/**
+ * Dialog which obtains a string. Used by the macro dialog to rename a macro.
+ */
+public class Get_a_string_dialog extends Abstract_text_dialog
+{
+    /**
+     * Creates the dialog.
+     *
+     * @param parent_shell      The parent shell.
+     * @param editor            The active editor.
+     * @param initial_string    The initial string to display. The text is selected.
+     * @param prompt_format     The format of the prompt to the user. Used by String.format(), so it
+     *                          needs to conform to that specification, with a single %s.
+     */
+    protected Get_a_string_dialog( Shell parent_shell,
+                                   IEditorPart editor,
+                                   String initial_string,
+                                   String prompt_format )
+    {
+        super( parent_shell,
+               editor,
+               String.format( prompt_format, initial_string ) + "     " ); //$NON-NLS-1$
+
+        m_string = initial_string;
+        m_string_prompt_format = prompt_format;
+    }
+
+    /**
+     * The string that is obtained from the dialog.
+     */
+    private String m_string = null;
+
+    /**
+     * Getter.
+     * @return  The string that is obtained from the dialog.
+     */
+    public String get_string()
+    {
+        return m_string;
+    }
+
+    /**
+     * The user prompt format. Used by String.format(), so it needs to conform to that specification.
+     */
+    private final String m_string_prompt_format;
+
+    @Override
+    protected void create_contents( Composite parent )
+    {
+        super.create_contents( parent );
+
+        // Select the current string so it can be overwritten by the user.
+        int start = m_string_prompt_format.indexOf( "%s" ); //$NON-NLS-1$
+        int end = start + m_string.length();
+        get_text().setSelection( start, end );
+    }
+
+    @Override
+    protected void button_pressed( int id )
+    {
+        if( IDialogConstants.OK_ID == id )
+        {
+            String text = get_text_string();
+            int start = m_string_prompt_format.indexOf( "%s" ); //$NON-NLS-1$
+
+            m_string = ( start < text.length() ) ? text.substring( start ).trim() : ""; //$NON-NLS-1$
+        }
+    }
+}
@@ -27,6 +27,8 @@ public class Key_binding_handler extends AbstractHandler
     @Override
     public Object execute( ExecutionEvent event ) throws ExecutionException
     {
+        long start = System.nanoTime();
+
         if( !isEnabled() )
         {
             Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
@@ -36,6 +38,7 @@ public class Key_binding_handler extends AbstractHandler
         }
 
         // Send all events back to plug-in main class.
-        return Activator.getDefault().execute( event );
+        return Activator.getDefault().execute( event,
+                                               start );
     }
 }
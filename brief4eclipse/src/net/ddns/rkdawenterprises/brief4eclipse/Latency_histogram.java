@@ -0,0 +1,199 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of latencies in nanoseconds, in log-linear buckets: each power of two
+ * range is split into the same number of linear sub-buckets, so every recorded value
+ * is kept to within about 6% of its true value however large it is.
+ *
+ * All the buckets are allocated up front, so recording a value does not allocate.
+ * Only used from the UI thread, so it is not synchronized.
+ */
+public class Latency_histogram
+{
+    /**
+     * The number of bits of precision within each power of two range.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of sub-buckets in the first range.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of sub-buckets in each following power of two range.
+     */
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * The number of buckets needed for any positive long value.
+     */
+    private static final int BUCKET_COUNT = bucket_index( Long.MAX_VALUE ) + 1;
+
+    /**
+     * The number of values recorded in each bucket.
+     */
+    private final long[] m_counts = new long[BUCKET_COUNT];
+
+    /**
+     * The number of values recorded.
+     */
+    private long m_count = 0;
+
+    /**
+     * The sum of the values recorded.
+     */
+    private long m_sum = 0;
+
+    /**
+     * The smallest value recorded.
+     */
+    private long m_minimum = Long.MAX_VALUE;
+
+    /**
+     * The largest value recorded.
+     */
+    private long m_maximum = 0;
+
+    /**
+     * Gets the bucket a value is counted in.
+     *
+     * @param value     The value, not negative.
+     *
+     * @return  The bucket index.
+     */
+    private static int bucket_index( long value )
+    {
+        int magnitude = 63 - Long.numberOfLeadingZeros( value | ( SUB_BUCKET_COUNT - 1 ) );
+        int shift = magnitude - ( SUB_BUCKET_BITS - 1 );
+        int sub_bucket = (int)( value >>> shift );
+
+        return( ( shift * SUB_BUCKET_HALF_COUNT ) + sub_bucket );
+    }
+
+    /**
+     * Gets the largest value counted in a bucket.
+     *
+     * @param index     The bucket index.
+     *
+     * @return  The largest value counted in the bucket.
+     */
+    private static long bucket_highest_value( int index )
+    {
+        if( index < SUB_BUCKET_COUNT ) return index;
+
+        int shift = ( index / SUB_BUCKET_HALF_COUNT ) - 1;
+        long sub_bucket = index - ( shift * SUB_BUCKET_HALF_COUNT );
+
+        return( ( ( sub_bucket + 1 ) << shift ) - 1 );
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value     The value in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record( long value )
+    {
+        if( value < 0 ) value = 0;
+
+        m_counts[bucket_index( value )]++;
+        m_count++;
+        m_sum += value;
+        if( value < m_minimum ) m_minimum = value;
+        if( value > m_maximum ) m_maximum = value;
+    }
+
+    /**
+     * Clears all the recorded values.
+     */
+    public void reset()
+    {
+        Arrays.fill( m_counts, 0 );
+        m_count = 0;
+        m_sum = 0;
+        m_minimum = Long.MAX_VALUE;
+        m_maximum = 0;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The number of values recorded.
+     */
+    public long get_count()
+    {
+        return m_count;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The smallest value recorded, or 0 if none.
+     */
+    public long get_minimum()
+    {
+        return( ( m_count == 0 ) ? 0 : m_minimum );
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The largest value recorded, or 0 if none.
+     */
+    public long get_maximum()
+    {
+        return m_maximum;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The average of the values recorded, or 0 if none.
+     */
+    public long get_mean()
+    {
+        return( ( m_count == 0 ) ? 0 : ( m_sum / m_count ) );
+    }
+
+    /**
+     * Gets the value that the given percentage of the recorded values are at or below.
+     *
+     * @param percentile    The percentage, 0-100.
+     *
+     * @return  The value, to within the precision of the buckets, or 0 if none recorded.
+     */
+    public long get_percentile( double percentile )
+    {
+        if( m_count == 0 ) return 0;
+
+        long target = (long)Math.ceil( ( Math.min( Math.max( percentile, 0.0 ), 100.0 ) / 100.0 ) * m_count );
+        if( target < 1 ) target = 1;
+
+        long total = 0;
+        for( int i = 0; i < BUCKET_COUNT; i++ )
+        {
+            total += m_counts[i];
+            if( total >= target ) return Math.min( bucket_highest_value( i ), m_maximum );
+        }
+
+        return m_maximum;
+    }
+}
@@ -0,0 +1,198 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.IEditorPart;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Abstract_table_dialog.Abstract_table_info;
+import net.ddns.rkdawenterprises.brief4eclipse.Macro_library.Macro_entry;
+
+/**
+ * Lists the macros in the macro library, to select the current macro, or rename or delete macros.
+ * Only the library index is used, none of the macro bodies are read.
+ */
+public class Macro_dialog extends Abstract_table_info
+{
+    /**
+     * Reference to the macro library.
+     */
+    private Macro_library m_macro_library = null;
+
+    /**
+     * The active editor, used as the editor for the rename dialog.
+     */
+    private IEditorPart m_editor = null;
+
+    /**
+     * The columns.
+     */
+    private static final String[] m_titles = { "", Messages.macro_dialog_0, Messages.macro_dialog_1 }; //$NON-NLS-1$
+
+    /**
+     * The justification of the columns.
+     */
+    private static final int[] m_justification = { SWT.CENTER, SWT.NONE, SWT.CENTER };
+
+    /**
+     * Rename button.
+     */
+    public final static int BUTTON_ID_RENAME = IDialogConstants.CLIENT_ID + 3;
+
+    /**
+     * Constructs the macro dialog instance with the given parent shell.
+     *
+     * @param parent_shell      The parent shell.
+     * @param editor            The active editor.
+     * @param macro_library     The macro library.
+     */
+    protected Macro_dialog( Shell parent_shell,
+                            IEditorPart editor,
+                            Macro_library macro_library )
+    {
+        super( parent_shell,
+               editor );
+        m_editor = editor;
+        m_macro_library = macro_library;
+    }
+
+    @Override
+    public Abstract_table_info get_table_info()
+    {
+        return this;
+    }
+
+    @Override
+    public String get_text( Object element,
+                            int column_index )
+    {
+        Macro_entry entry = (Macro_entry)element;
+
+        switch( column_index )
+        {
+            case 0: return( entry.get_name().equals( m_macro_library.get_current_name() ) ? "*" : "" ); //$NON-NLS-1$ //$NON-NLS-2$
+            case 1: return entry.get_name();
+            case 2: return Integer.toString( entry.get_event_count() );
+
+            default: return null;
+        }
+    }
+
+    @Override
+    public String get_title( int column_index )
+    {
+        return( m_titles[column_index] );
+    }
+
+    @Override
+    public int get_number_of_columns()
+    {
+        return( m_titles.length );
+    }
+
+    @Override
+    public List< Object > get_table_items()
+    {
+        return( new ArrayList<Object>( m_macro_library.get_entries() ) );
+    }
+
+    @Override
+    public int get_justification( int column_index )
+    {
+        return( m_justification[column_index] );
+    }
+
+    /**
+     * Gets the currently selected macro.
+     *
+     * @return  The currently selected macro's entry.
+     */
+    public Macro_entry get_selected_macro_entry()
+    {
+        return( (Macro_entry)get_selected_item() );
+    }
+
+    @Override
+    protected void create_buttons( Composite parent,
+                                   int height )
+    {
+        super.create_buttons( parent, height );
+
+        create_button( parent,
+                       BUTTON_ID_RENAME,
+                       Messages.macro_dialog_2,
+                       null,
+                       SWT.DEFAULT,
+                       height,
+                       false );
+    }
+
+    @Override
+    protected void button_pressed( int id )
+    {
+        if( BUTTON_ID_RENAME == id )
+        {
+            rename_button_pressed();
+            return;
+        }
+
+        super.button_pressed( id );
+    }
+
+    /**
+     * Asks for a new name for the selected macro and renames it in the library.
+     */
+    private void rename_button_pressed()
+    {
+        Macro_entry entry = get_selected_macro_entry();
+        if( entry == null ) return;
+
+        Get_a_string_dialog dialog = new Get_a_string_dialog( getShell(),
+                                                              m_editor,
+                                                              entry.get_name(),
+                                                              Messages.macro_dialog_3 );
+        if( dialog.open() != Window.OK ) return;
+
+        if( m_macro_library.rename( entry, dialog.get_string() ) )
+        {
+            Activator.beep();
+            return;
+        }
+
+        refresh_table();
+    }
+
+    @Override
+    public void clear_button_pressed( Object selected_item )
+    {
+        Macro_entry entry = get_selected_macro_entry();
+        if( entry == null ) return;
+
+        m_macro_library.delete( entry );
+    }
+
+    @Override
+    public void clear_all_button_pressed()
+    {
+        m_macro_library.delete_all();
+    }
+}
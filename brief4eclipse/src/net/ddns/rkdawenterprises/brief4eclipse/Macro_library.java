@@ -0,0 +1,531 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Macro_support.Macro;
+
+/**
+ * The keystroke macros kept across sessions, stored in a single file in the plug-in's state location.
+ *
+ * The file has a versioned header, followed by an index of the macro names with the offset
+ * and length of each macro's body, followed by the bodies. Only the header and index are read
+ * when the library is opened, a macro's body is read and decoded the first time it is played.
+ *
+ *  header: int MAGIC, int VERSION, UTF current macro name, int number of macros
+ *  index:  for each macro: UTF name, int body offset, int body length, int number of events
+ *  body:   varint number of commands, UTF for each serialized command,
+ *          varint number of event integers, varint for each event integer
+ */
+public class Macro_library
+{
+    /**
+     * Identifies the file as a macro library. "B4EM".
+     */
+    private static final int MAGIC = 0x4234454D;
+
+    /**
+     * The file format version. Files with any other version are ignored.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The smallest index entry, in bytes: an empty UTF name, offset, length and event count.
+     */
+    private static final int MIN_ENTRY_LENGTH = 2 + 4 + 4 + 4;
+
+    /**
+     * The name of the library file in the plug-in's state location.
+     */
+    private static final String FILE_NAME = "macros.bin"; //$NON-NLS-1$
+
+    /**
+     * A macro in the library.
+     */
+    public static class Macro_entry
+    {
+        /**
+         * The name of the macro. Unique in the library.
+         */
+        protected String m_name;
+
+        /**
+         * The number of events in the macro.
+         */
+        protected int m_event_count;
+
+        /**
+         * The offset of the body in the library file, or -1 if not written yet.
+         */
+        protected long m_offset = -1;
+
+        /**
+         * The length of the body in the library file, in bytes.
+         */
+        protected int m_length = 0;
+
+        /**
+         * The decoded macro, or null if not read yet.
+         */
+        protected Macro m_macro = null;
+
+        /**
+         * Getter.
+         *
+         * @return  The name of the macro.
+         */
+        public String get_name()
+        {
+            return m_name;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  The number of events in the macro.
+         */
+        public int get_event_count()
+        {
+            return m_event_count;
+        }
+    }
+
+    /**
+     * The library file.
+     */
+    private File m_file = null;
+
+    /**
+     * The macros in the library, in the order they were added.
+     */
+    private ArrayList<Macro_entry> m_entries = new ArrayList<Macro_entry>();
+
+    /**
+     * The name of the macro played back by default, or an empty string if none.
+     */
+    private String m_current_name = ""; //$NON-NLS-1$
+
+    /**
+     * Opens the library and reads its index. The macro bodies are read when first needed.
+     *
+     * @param directory     The directory the library file is in.
+     */
+    protected Macro_library( File directory )
+    {
+        m_file = new File( directory, FILE_NAME );
+        read_index();
+    }
+
+    /**
+     * Reads the header and the index of the library file, if it exists.
+     */
+    private void read_index()
+    {
+        if( !m_file.exists() ) return;
+
+        try( RandomAccessFile file = new RandomAccessFile( m_file, "r" ) ) //$NON-NLS-1$
+        {
+            if( ( file.readInt() != MAGIC ) || ( file.readInt() != VERSION ) )
+            {
+                Activator.log_info( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Ignoring macro library with unknown format <" + m_file + ">" ); //$NON-NLS-1$ //$NON-NLS-2$
+                return;
+            }
+
+            m_current_name = file.readUTF();
+
+            // Each entry takes at least an empty name and three ints, so a count or body
+            // outside the file can only come from a corrupt file.
+            int count = file.readInt();
+            if( ( count < 0 ) || ( count > ( ( file.length() - file.getFilePointer() ) / MIN_ENTRY_LENGTH ) ) )
+            {
+                throw new IOException( "Corrupt macro library index" ); //$NON-NLS-1$
+            }
+
+            ArrayList<Macro_entry> entries = new ArrayList<Macro_entry>( count );
+            for( int i = 0; i < count; i++ )
+            {
+                Macro_entry entry = new Macro_entry();
+                entry.m_name = file.readUTF();
+                entry.m_offset = file.readInt();
+                entry.m_length = file.readInt();
+                entry.m_event_count = file.readInt();
+                if( ( entry.m_offset < 0 ) || ( entry.m_length < 0 ) || ( entry.m_event_count < 0 ) ||
+                        ( ( entry.m_offset + entry.m_length ) > file.length() ) )
+                {
+                    throw new IOException( "Corrupt macro library entry" ); //$NON-NLS-1$
+                }
+                entries.add( entry );
+            }
+
+            m_entries = entries;
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not read the macro library <" + m_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            m_entries.clear();
+            m_current_name = ""; //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The macros in the library. Their bodies are not read.
+     */
+    public List<Macro_entry> get_entries()
+    {
+        return m_entries;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The name of the macro played back by default, or an empty string if none.
+     */
+    public String get_current_name()
+    {
+        return m_current_name;
+    }
+
+    /**
+     * Finds the macro with the given name.
+     *
+     * @param name  The name of the macro.
+     *
+     * @return  The macro's entry, or null if not in the library.
+     */
+    public Macro_entry find( String name )
+    {
+        for( Macro_entry entry : m_entries )
+        {
+            if( entry.m_name.equals( name ) ) return entry;
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a name that is not used by any macro in the library.
+     *
+     * @return  The new name.
+     */
+    public String new_name()
+    {
+        for( int i = m_entries.size() + 1; ; i++ )
+        {
+            String name = String.format( Messages.macro_library_0, i );
+            if( find( name ) == null ) return name;
+        }
+    }
+
+    /**
+     * Gets the macro of the given entry, reading it from the library file if needed.
+     *
+     * @param entry     The macro's entry.
+     *
+     * @return  The macro, or null if it could not be read.
+     */
+    public Macro get_macro( Macro_entry entry )
+    {
+        if( entry.m_macro != null ) return entry.m_macro;
+
+        try
+        {
+            entry.m_macro = decode( read_body( entry ) );
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not read macro <" + entry.m_name + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return null;
+        }
+
+        return entry.m_macro;
+    }
+
+    /**
+     * Adds the macro to the library, makes it the current macro, and stores the library.
+     *
+     * @param name      The macro's name. Replaces any macro with the same name.
+     * @param macro     The macro.
+     *
+     * @return  The macro's entry.
+     */
+    public Macro_entry add( String name,
+                            Macro macro )
+    {
+        Macro_entry entry = find( name );
+        if( entry == null )
+        {
+            entry = new Macro_entry();
+            entry.m_name = name;
+            m_entries.add( entry );
+        }
+
+        entry.m_event_count = macro.get_event_count();
+        entry.m_offset = -1;
+        entry.m_length = 0;
+        entry.m_macro = macro;
+
+        m_current_name = name;
+
+        store();
+
+        return entry;
+    }
+
+    /**
+     * Makes the given macro the current macro and stores the library.
+     *
+     * @param entry     The macro's entry.
+     */
+    public void set_current( Macro_entry entry )
+    {
+        if( m_current_name.equals( entry.m_name ) ) return;
+
+        m_current_name = entry.m_name;
+        store();
+    }
+
+    /**
+     * Renames the macro and stores the library.
+     *
+     * @param entry     The macro's entry.
+     * @param name      The new name.
+     *
+     * @return  Error status. True if the name is empty or already used by another macro.
+     */
+    public boolean rename( Macro_entry entry,
+                           String name )
+    {
+        if( name.isEmpty() ) return true;
+        if( name.equals( entry.m_name ) ) return false;
+        if( find( name ) != null ) return true;
+
+        if( m_current_name.equals( entry.m_name ) ) m_current_name = name;
+        entry.m_name = name;
+
+        store();
+
+        return false;
+    }
+
+    /**
+     * Deletes the macro and stores the library.
+     *
+     * @param entry     The macro's entry.
+     */
+    public void delete( Macro_entry entry )
+    {
+        if( !m_entries.remove( entry ) ) return;
+
+        if( m_current_name.equals( entry.m_name ) ) m_current_name = ""; //$NON-NLS-1$
+
+        store();
+    }
+
+    /**
+     * Deletes all of the macros and stores the library.
+     */
+    public void delete_all()
+    {
+        m_entries.clear();
+        m_current_name = ""; //$NON-NLS-1$
+
+        store();
+    }
+
+    /**
+     * Writes the library file. The bodies of the macros that were not read are copied from
+     * the existing file without being decoded. The file is replaced only when completely written.
+     *
+     * @return  Error status. True if an error occurs.
+     */
+    private boolean store()
+    {
+        try
+        {
+            // Get all of the bodies before the existing file is replaced.
+            byte[][] bodies = new byte[m_entries.size()][];
+            for( int i = 0; i < bodies.length; i++ )
+            {
+                Macro_entry entry = m_entries.get( i );
+                bodies[i] = ( entry.m_offset < 0 ) ? encode( entry.m_macro ) : read_body( entry );
+            }
+
+            ByteArrayOutputStream index_bytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream( index_bytes );
+            for( int i = 0; i < bodies.length; i++ )
+            {
+                index.writeUTF( m_entries.get( i ).m_name );
+                index.writeInt( 0 );
+                index.writeInt( 0 );
+                index.writeInt( 0 );
+            }
+
+            ByteArrayOutputStream header_bytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream( header_bytes );
+            header.writeInt( MAGIC );
+            header.writeInt( VERSION );
+            header.writeUTF( m_current_name );
+            header.writeInt( bodies.length );
+
+            // Now that the size of the header and index is known, the offsets can be filled in.
+            long[] offsets = new long[bodies.length];
+            long offset = header_bytes.size() + index_bytes.size();
+            index_bytes.reset();
+            for( int i = 0; i < bodies.length; i++ )
+            {
+                offsets[i] = offset;
+
+                index.writeUTF( m_entries.get( i ).m_name );
+                index.writeInt( (int)offset );
+                index.writeInt( bodies[i].length );
+                index.writeInt( m_entries.get( i ).m_event_count );
+
+                offset += bodies[i].length;
+            }
+
+            File temporary_file = new File( m_file.getParentFile(), FILE_NAME + ".tmp" ); //$NON-NLS-1$
+            try( BufferedOutputStream output = new BufferedOutputStream( new FileOutputStream( temporary_file ) ) )
+            {
+                header_bytes.writeTo( output );
+                index_bytes.writeTo( output );
+                for( byte[] body : bodies )
+                {
+                    output.write( body );
+                }
+            }
+
+            Files.move( temporary_file.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+
+            for( int i = 0; i < bodies.length; i++ )
+            {
+                m_entries.get( i ).m_offset = offsets[i];
+                m_entries.get( i ).m_length = bodies[i].length;
+            }
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not write the macro library <" + m_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads the body of a macro from the library file.
+     *
+     * @param entry     The macro's entry.
+     *
+     * @return  The body.
+     *
+     * @throws IOException
+     */
+    private byte[] read_body( Macro_entry entry ) throws IOException
+    {
+        if( entry.m_offset < 0 ) throw new IOException( "Macro not stored" ); //$NON-NLS-1$
+
+        byte[] body = new byte[entry.m_length];
+        try( RandomAccessFile file = new RandomAccessFile( m_file, "r" ) ) //$NON-NLS-1$
+        {
+            file.seek( entry.m_offset );
+            file.readFully( body );
+        }
+
+        return body;
+    }
+
+    /**
+     * Encodes a macro into a body.
+     *
+     * @param macro     The macro.
+     *
+     * @return  The body.
+     *
+     * @throws IOException
+     */
+    private static byte[] encode( Macro macro ) throws IOException
+    {
+        ByteArrayOutputStream body_bytes = new ByteArrayOutputStream( 16 + ( macro.m_length * 2 ) );
+        DataOutputStream body = new DataOutputStream( body_bytes );
+
+        Varint_codec.write( body, macro.m_commands.size() );
+        for( String command : macro.m_commands )
+        {
+            body.writeUTF( command );
+        }
+
+        Varint_codec.write( body, macro.m_length );
+        for( int i = 0; i < macro.m_length; i++ )
+        {
+            Varint_codec.write( body, macro.m_events[i] );
+        }
+
+        body.flush();
+        return body_bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a body into a macro.
+     *
+     * @param body_bytes    The body.
+     *
+     * @return  The macro.
+     *
+     * @throws IOException
+     */
+    private static Macro decode( byte[] body_bytes ) throws IOException
+    {
+        DataInputStream body = new DataInputStream( new ByteArrayInputStream( body_bytes ) );
+        Macro macro = new Macro();
+
+        int command_count = Varint_codec.read( body );
+        macro.m_commands.ensureCapacity( command_count );
+        for( int i = 0; i < command_count; i++ )
+        {
+            macro.m_commands.add( body.readUTF() );
+        }
+
+        int length = Varint_codec.read( body );
+        if( ( length % Macro_support.EVENT_STRIDE ) != 0 ) throw new IOException( "Corrupt macro" ); //$NON-NLS-1$
+
+        macro.m_events = new int[Math.max( length, Macro_support.EVENT_STRIDE )];
+        for( int i = 0; i < length; i++ )
+        {
+            macro.m_events[i] = Varint_codec.read( body );
+        }
+        macro.m_length = length;
+
+        return macro;
+    }
+}
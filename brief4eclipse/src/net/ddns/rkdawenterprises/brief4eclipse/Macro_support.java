@@ -0,0 +1,608 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.commands.IExecutionListenerWithChecks;
+import org.eclipse.core.commands.NotEnabledException;
+import org.eclipse.core.commands.NotHandledException;
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.core.commands.common.NotDefinedException;
+import org.eclipse.jface.window.Window;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.commands.ICommandService;
+import org.eclipse.ui.handlers.IHandlerService;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Macro_library.Macro_entry;
+
+/**
+ * Keystroke macro functionality.
+ *
+ * While remembering, the key events typed into the focused text editor are captured by
+ * a display filter, and the commands they trigger through the key bindings are captured
+ * by a command execution listener. Both go into a compact event log that is played back
+ * in-process, directly to the text widget and the handler service.
+ *
+ * Remembered macros are kept in the macro library, and the most recent or the one selected
+ * in the macro dialog is the one played back.
+ */
+public class Macro_support
+{
+    /**
+     * Command ID of the toggle that starts and stops remembering a macro.
+     */
+    public static final String MACRO_RECORD_TOGGLE_COMMAND_ID = "net.ddns.rkdawenterprises.brief4eclipse.commands.macro_record_toggle"; //$NON-NLS-1$
+
+    /**
+     * Command ID that plays back the remembered macro.
+     */
+    public static final String MACRO_PLAYBACK_COMMAND_ID = "net.ddns.rkdawenterprises.brief4eclipse.commands.macro_playback"; //$NON-NLS-1$
+
+    /**
+     * Matches the numbered drop bookmark commands that were replaced by the parameterized one,
+     * which may still be in recorded macros.
+     */
+    private static final Pattern LEGACY_DROP_BOOKMARK_COMMAND =
+            Pattern.compile( "(net\\.ddns\\.rkdawenterprises\\.brief4eclipse\\.commands\\.drop_bookmark)(\\d+)" ); //$NON-NLS-1$
+
+    /**
+     * Rewrites a serialized command recorded by an earlier version of the plug-in
+     * into its current form.
+     *
+     * @param serialized_command    The serialized command.
+     *
+     * @return  The serialized command in its current form.
+     */
+    private static String upgrade_serialized_command( String serialized_command )
+    {
+        Matcher matcher = LEGACY_DROP_BOOKMARK_COMMAND.matcher( serialized_command );
+        if( !matcher.matches() ) return serialized_command;
+
+        return( matcher.group( 1 ) + "(" + matcher.group( 1 ) + ".number=" + matcher.group( 2 ) + ")" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+    }
+
+    /**
+     * Event type of a key pressed in the text widget.
+     */
+    public static final int EVENT_KEY_DOWN = 1;
+
+    /**
+     * Event type of a key released in the text widget.
+     */
+    public static final int EVENT_KEY_UP = 2;
+
+    /**
+     * Event type of a command executed by a key binding or menu.
+     */
+    public static final int EVENT_COMMAND = 3;
+
+    /**
+     * Number of integers per event in the event log.
+     * Keys are {type, state mask, key code, character}.
+     * Commands are {type, command table index, 0, 0}.
+     */
+    public static final int EVENT_STRIDE = 4;
+
+    /**
+     * A recorded keystroke macro.
+     */
+    public static class Macro
+    {
+        /**
+         * The event log, EVENT_STRIDE integers per event.
+         */
+        protected int[] m_events = new int[64 * EVENT_STRIDE];
+
+        /**
+         * The number of integers used in the event log.
+         */
+        protected int m_length = 0;
+
+        /**
+         * The serialized commands referred to by the command events.
+         */
+        protected ArrayList<String> m_commands = new ArrayList<String>();
+
+        /**
+         * Appends an event to the log.
+         *
+         * @param type  The event type.
+         * @param a     First event argument.
+         * @param b     Second event argument.
+         * @param c     Third event argument.
+         */
+        protected void add_event( int type,
+                                  int a,
+                                  int b,
+                                  int c )
+        {
+            if( m_length + EVENT_STRIDE > m_events.length )
+            {
+                m_events = Arrays.copyOf( m_events, m_events.length * 2 );
+            }
+
+            m_events[m_length++] = type;
+            m_events[m_length++] = a;
+            m_events[m_length++] = b;
+            m_events[m_length++] = c;
+        }
+
+        /**
+         * Appends a command event to the log. Each distinct command is stored only once.
+         *
+         * @param serialized_command    The serialized parameterized command.
+         */
+        protected void add_command( String serialized_command )
+        {
+            int index = m_commands.indexOf( serialized_command );
+            if( index < 0 )
+            {
+                index = m_commands.size();
+                m_commands.add( serialized_command );
+            }
+
+            add_event( EVENT_COMMAND, index, 0, 0 );
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  The number of events in the macro.
+         */
+        public int get_event_count()
+        {
+            return( m_length / EVENT_STRIDE );
+        }
+    }
+
+    /**
+     * Reference to the text editor proxy, which is the parent.
+     */
+    private Text_editor_proxy m_text_editor_proxy = null;
+
+    /**
+     * The macros kept across sessions. Opened when first needed.
+     */
+    private Macro_library m_macro_library = null;
+
+    /**
+     * The macro being remembered, or null when not remembering.
+     */
+    private Macro m_recording = null;
+
+    /**
+     * The display the key filter is registered with while remembering.
+     */
+    private Display m_recording_display = null;
+
+    /**
+     * Ignore key releases until the first key press, so the release of the key that
+     * started remembering is not part of the macro.
+     */
+    private boolean m_got_key_down = false;
+
+    /**
+     * Nesting depth of command executions. Only top level commands are remembered,
+     * the commands they execute in turn are not.
+     */
+    private int m_command_depth = 0;
+
+    /**
+     * Flag indicating a playback is in progress.
+     */
+    private boolean m_in_playback = false;
+
+    /**
+     * Creates the macro support.
+     *
+     * @param text_editor_proxy     The text editor proxy, which is the parent of this object.
+     */
+    protected Macro_support( Text_editor_proxy text_editor_proxy )
+    {
+        m_text_editor_proxy = text_editor_proxy;
+    }
+
+    /**
+     * Must be called to remove the listeners if still remembering.
+     */
+    protected void dispose()
+    {
+        if( m_recording != null ) stop_recording();
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  True if a macro is being remembered.
+     */
+    public boolean is_recording()
+    {
+        return( m_recording != null );
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  True if a macro is being played back.
+     */
+    public boolean is_in_playback()
+    {
+        return m_in_playback;
+    }
+
+    /**
+     * Starts remembering a new macro, or stops and keeps it if already remembering.
+     */
+    protected void record_toggle()
+    {
+        if( m_recording != null )
+        {
+            stop_recording();
+            return;
+        }
+
+        if( m_in_playback ) return;
+
+        m_recording = new Macro();
+        m_got_key_down = false;
+        m_command_depth = 0;
+
+        m_recording_display = m_text_editor_proxy.get_current_display();
+        m_recording_display.addFilter( SWT.KeyDown, m_key_filter );
+        m_recording_display.addFilter( SWT.KeyUp, m_key_filter );
+
+        /*
+         * The recorder needs to see the keys as typed, before an active marking mode
+         * modifies them, since playback goes through the marking mode filters again.
+         */
+        m_text_editor_proxy.reinstall_marking_mode_key_filters();
+
+        PlatformUI.getWorkbench().getService( ICommandService.class ).addExecutionListener( m_execution_listener );
+
+        Activator.set_status_line( Messages.macro_support_0 );
+    }
+
+    /**
+     * Stops remembering and keeps the macro if it has any events.
+     */
+    private void stop_recording()
+    {
+        m_recording_display.removeFilter( SWT.KeyDown, m_key_filter );
+        m_recording_display.removeFilter( SWT.KeyUp, m_key_filter );
+        m_recording_display = null;
+
+        PlatformUI.getWorkbench().getService( ICommandService.class ).removeExecutionListener( m_execution_listener );
+
+        if( m_recording.get_event_count() > 0 )
+        {
+            Macro_library macro_library = get_macro_library();
+            macro_library.add( macro_library.new_name(), m_recording );
+            Activator.set_status_line( Messages.macro_support_1 );
+        }
+        else
+        {
+            Activator.set_status_line( Messages.macro_support_2 );
+        }
+
+        m_recording = null;
+    }
+
+    /**
+     * Plays back the remembered macro the given number of times as a single undoable change.
+     *
+     * @param count     The number of times to play back the macro.
+     *
+     * @return  Error status. True if an error occurs.
+     */
+    protected boolean playback( int count )
+    {
+        if( m_recording != null )
+        {
+            Activator.set_status_line( Messages.macro_support_3 );
+            Activator.beep();
+            return true;
+        }
+
+        if( m_in_playback ) return true;
+
+        Macro macro = get_current_macro();
+        if( macro == null )
+        {
+            Activator.set_status_line( Messages.macro_support_2 );
+            Activator.beep();
+            return true;
+        }
+
+        // Resolve the commands once for all the repetitions.
+        ICommandService command_service = PlatformUI.getWorkbench().getService( ICommandService.class );
+        ParameterizedCommand[] commands = new ParameterizedCommand[macro.m_commands.size()];
+        for( int i = 0; i < commands.length; i++ )
+        {
+            try
+            {
+                commands[i] = command_service.deserialize( upgrade_serialized_command( macro.m_commands.get( i ) ) );
+            }
+            catch( Exception exception )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Command <" + macro.m_commands.get( i ) + "> is not defined.", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+                return true;
+            }
+        }
+
+        IHandlerService handler_service =
+                m_text_editor_proxy.get_active_editor().getSite().getService( IHandlerService.class );
+        Display display = m_text_editor_proxy.get_current_display();
+
+        m_in_playback = true;
+
+        try
+        {
+            return m_text_editor_proxy.execute_batched( (Text_editor_proxy.i_batched_operation)() ->
+            {
+                for( int i = 0; i < count; i++ )
+                {
+                    if( play_events( macro, commands, handler_service, display ) ) return true;
+                }
+
+                return false;
+            } );
+        }
+        finally
+        {
+            m_in_playback = false;
+        }
+    }
+
+    /**
+     * Gets the macro library, opening it if needed.
+     *
+     * @return  The macro library.
+     */
+    private Macro_library get_macro_library()
+    {
+        if( m_macro_library == null )
+        {
+            m_macro_library = new Macro_library( Activator.getDefault().getStateLocation().toFile() );
+        }
+
+        return m_macro_library;
+    }
+
+    /**
+     * Gets the current macro. Only this macro's body is read from the library.
+     *
+     * @return  The current macro, or null if none.
+     */
+    private Macro get_current_macro()
+    {
+        Macro_library macro_library = get_macro_library();
+
+        Macro_entry entry = macro_library.find( macro_library.get_current_name() );
+        if( entry == null ) return null;
+
+        return macro_library.get_macro( entry );
+    }
+
+    /**
+     * Opens the dialog listing the macros in the library. The selected macro becomes the current macro.
+     *
+     * @param workbench_window  The current workbench window.
+     */
+    protected void open_macro_dialog( IWorkbenchWindow workbench_window )
+    {
+        if( m_recording != null )
+        {
+            Activator.set_status_line( Messages.macro_support_0 );
+            Activator.beep();
+            return;
+        }
+
+        Macro_library macro_library = get_macro_library();
+        if( macro_library.get_entries().size() == 0 )
+        {
+            Activator.set_status_line( Messages.macro_support_4 );
+            return;
+        }
+
+        IEditorPart active_editor = m_text_editor_proxy.get_active_editor();
+        if( active_editor == null ) return;
+
+        Macro_dialog dialog = new Macro_dialog( workbench_window.getShell(),
+                                                active_editor,
+                                                macro_library );
+
+        Macro_entry selected_entry = null;
+        if( dialog.open() == Window.OK )
+        {
+            selected_entry = dialog.get_selected_macro_entry();
+        }
+
+        IWorkbenchPage workbench_page = workbench_window.getActivePage();
+        if( workbench_page == null ) return;
+        workbench_page.activate( active_editor );
+
+        if( selected_entry == null ) return;
+
+        macro_library.set_current( selected_entry );
+        Activator.set_status_line( selected_entry.get_name() );
+    }
+
+    /**
+     * Plays back the macro's events once.
+     *
+     * @param macro             The macro to play back.
+     * @param commands          The macro's commands, resolved.
+     * @param handler_service   The handler service to execute the commands with.
+     * @param display           The display of the text editor.
+     *
+     * @return  Error status. True if an error occurs.
+     */
+    private boolean play_events( Macro macro,
+                                 ParameterizedCommand[] commands,
+                                 IHandlerService handler_service,
+                                 Display display )
+    {
+        int[] events = macro.m_events;
+
+        for( int i = 0; i < macro.m_length; i += EVENT_STRIDE )
+        {
+            if( events[i] == EVENT_COMMAND )
+            {
+                ParameterizedCommand command = commands[events[i + 1]];
+
+                try
+                {
+                    handler_service.executeCommand( command, null );
+                }
+                catch( ExecutionException | NotDefinedException | NotEnabledException | NotHandledException exception )
+                {
+                    Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                            "Command <" + command.getId() + "> could not be executed.", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+                    return true;
+                }
+
+                continue;
+            }
+
+            /*
+             * Keys go to whichever text widget has the focus, the same as when they were typed,
+             * since a command in the macro may have switched editors.
+             */
+            Control focus_control = display.getFocusControl();
+            if( !( focus_control instanceof StyledText ) )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "No text editor has the focus." ); //$NON-NLS-1$
+                return true;
+            }
+
+            Event event = new Event();
+            event.stateMask = events[i + 1];
+            event.keyCode = events[i + 2];
+            event.character = (char)events[i + 3];
+            event.doit = true;
+
+            focus_control.notifyListeners( ( events[i] == EVENT_KEY_DOWN ) ? SWT.KeyDown : SWT.KeyUp, event );
+        }
+
+        return false;
+    }
+
+    /**
+     * Filter that remembers the keys typed into the focused text widget.
+     * Keys consumed by a key binding never get here, their command is remembered instead.
+     */
+    private Listener m_key_filter = new Listener()
+    {
+        @Override
+        public void handleEvent( Event event )
+        {
+            if( m_recording == null ) return;
+            if( m_in_playback ) return;
+
+            if( !( event.widget instanceof StyledText ) ) return;
+            if( !( (StyledText)event.widget ).isFocusControl() ) return;
+
+            if( event.type == SWT.KeyDown )
+            {
+                m_got_key_down = true;
+                m_recording.add_event( EVENT_KEY_DOWN, event.stateMask, event.keyCode, event.character );
+            }
+            else if( m_got_key_down )
+            {
+                m_recording.add_event( EVENT_KEY_UP, event.stateMask, event.keyCode, event.character );
+            }
+        }
+    };
+
+    /**
+     * Remembers the top level commands executed while remembering, except the macro commands.
+     */
+    private IExecutionListenerWithChecks m_execution_listener = new IExecutionListenerWithChecks()
+    {
+        @Override
+        public void preExecute( String command_id,
+                                ExecutionEvent event )
+        {
+            if( ( m_command_depth++ > 0 ) || ( m_recording == null ) || m_in_playback ) return;
+
+            if( command_id.equals( MACRO_RECORD_TOGGLE_COMMAND_ID ) ||
+                    command_id.equals( MACRO_PLAYBACK_COMMAND_ID ) ) return;
+
+            m_got_key_down = true;
+            m_recording.add_command( ParameterizedCommand.generateCommand( event.getCommand(),
+                                                                           event.getParameters() ).serialize() );
+        }
+
+        @Override
+        public void postExecuteSuccess( String command_id,
+                                        Object return_value )
+        {
+            command_finished();
+        }
+
+        @Override
+        public void postExecuteFailure( String command_id,
+                                        ExecutionException exception )
+        {
+            command_finished();
+        }
+
+        @Override
+        public void notHandled( String command_id,
+                                NotHandledException exception )
+        {
+            command_finished();
+        }
+
+        @Override
+        public void notEnabled( String command_id,
+                                NotEnabledException exception )
+        {
+            command_finished();
+        }
+
+        @Override
+        public void notDefined( String command_id,
+                                NotDefinedException exception )
+        {
+            command_finished();
+        }
+
+        /**
+         * Unwinds the command nesting depth.
+         */
+        private void command_finished()
+        {
+            if( m_command_depth > 0 ) m_command_depth--;
+        }
+    };
+}
@@ -34,12 +34,18 @@ public class Messages extends NLS
 
     public static String bookmark_dialog_3;
 
+    public static String bookmark_store_job_0;
+
     public static String bookmarks_support_18;
 
     public static String bookmarks_support_19;
 
     public static String bookmarks_support_22;
 
+    public static String bookmarks_support_23;
+
+    public static String bookmarks_support_24;
+
     public static String brief_for_eclipse_13;
 
     public static String brief_for_eclipse_14;
@@ -62,10 +68,56 @@ public class Messages extends NLS
 
     public static String command_dialog_repeat_command_key_binding;
 
+    public static String drop_named_bookmark_dialog_prompt_format;
+
     public static String goto_line_number_dialog_prompt_format;
 
     public static String jump_bookmark_number_dialog_prompt_format;
 
+    public static String jump_named_bookmark_dialog_prompt_format;
+
+    public static String macro_dialog_0;
+
+    public static String macro_dialog_1;
+
+    public static String macro_dialog_2;
+
+    public static String macro_dialog_3;
+
+    public static String macro_library_0;
+
+    public static String macro_support_0;
+
+    public static String macro_support_1;
+
+    public static String macro_support_2;
+
+    public static String macro_support_3;
+
+    public static String macro_support_4;
+
+    public static String metrics_view_0;
+
+    public static String metrics_view_1;
+
+    public static String metrics_view_2;
+
+    public static String metrics_view_3;
+
+    public static String metrics_view_4;
+
+    public static String metrics_view_5;
+
+    public static String metrics_view_6;
+
+    public static String metrics_view_7;
+
+    public static String metrics_view_8;
+
+    public static String metrics_view_9;
+
+    public static String named_bookmark_index_0;
+
     public static String scrap_dialog_0;
 
     public static String scrap_dialog_1;
@@ -74,6 +126,12 @@ public class Messages extends NLS
 
     public static String scrap_dialog_3;
 
+    public static String scrap_dialog_4;
+
+    public static String scrap_dialog_5;
+
+    public static String scrap_ingest_job_0;
+
     public static String scrap_support_9;
 
     public static String text_editor_proxy_0;
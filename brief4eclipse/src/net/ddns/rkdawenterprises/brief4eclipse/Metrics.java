@@ -0,0 +1,187 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Command_registry.Command_handler;
+
+/**
+ * Counters of the expensive operations behind the commands, and the report of them
+ * together with each command's latency histogram. Shown in the metrics view, and can
+ * be written to a file to compare runs.
+ */
+public final class Metrics
+{
+    /**
+     * The operations that are counted.
+     */
+    public enum COUNTER
+    {
+        CLIPBOARD_READ,
+        REFLECTIVE_CALL,
+        DOCUMENT_EDIT
+    }
+
+    /**
+     * The counts, by counter ordinal. Clipboard reads also happen in the scrap ingest job.
+     */
+    private static final AtomicLongArray m_counters = new AtomicLongArray( COUNTER.values().length );
+
+    /**
+     * Not instantiated.
+     */
+    private Metrics() {}
+
+    /**
+     * Counts one occurrence of an operation.
+     *
+     * @param counter   The operation.
+     */
+    public static void count( COUNTER counter )
+    {
+        m_counters.incrementAndGet( counter.ordinal() );
+    }
+
+    /**
+     * Gets the count of an operation.
+     *
+     * @param counter   The operation.
+     *
+     * @return  The number of times the operation occurred.
+     */
+    public static long get( COUNTER counter )
+    {
+        return m_counters.get( counter.ordinal() );
+    }
+
+    /**
+     * Clears the counters and the command latencies.
+     *
+     * @param registry  The command registry.
+     */
+    public static void reset( Command_registry registry )
+    {
+        for( int i = 0; i < m_counters.length(); i++ )
+        {
+            m_counters.set( i, 0 );
+        }
+
+        for( Command_handler handler : registry.get_handlers() )
+        {
+            handler.get_latency().reset();
+        }
+    }
+
+    /**
+     * Gets the commands that were executed, slowest at the 99th percentile first.
+     *
+     * @param registry  The command registry.
+     *
+     * @return  The executed commands.
+     */
+    public static List<Command_handler> get_executed_handlers( Command_registry registry )
+    {
+        List<Command_handler> handlers = registry.get_handlers();
+        handlers.removeIf( ( Command_handler handler ) -> handler.get_latency().get_count() == 0 );
+        handlers.sort( Comparator.comparingLong( ( Command_handler handler ) -> handler.get_latency().get_percentile( 99.0 ) ).reversed() );
+
+        return handlers;
+    }
+
+    /**
+     * Formats nanoseconds as milliseconds.
+     *
+     * @param nanoseconds   The time in nanoseconds.
+     *
+     * @return  The time in milliseconds, to the microsecond.
+     */
+    public static String to_milliseconds( long nanoseconds )
+    {
+        return String.format( "%.3f", nanoseconds / 1000000.0 ); //$NON-NLS-1$
+    }
+
+    /**
+     * Creates a text report of the command latencies and the counters.
+     *
+     * @param registry  The command registry.
+     *
+     * @return  The report.
+     */
+    public static String report( Command_registry registry )
+    {
+        StringBuilder report = new StringBuilder();
+
+        report.append( String.format( "%-40s %8s %10s %10s %10s %10s %10s%n", //$NON-NLS-1$
+                                      "command", "count", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms" ) ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+        for( Command_handler handler : get_executed_handlers( registry ) )
+        {
+            Latency_histogram latency = handler.get_latency();
+            report.append( String.format( "%-40s %8d %10s %10s %10s %10s %10s%n", //$NON-NLS-1$
+                                          handler.get_command_id().substring( Command_registry.COMMAND_ID_PREFIX.length() ),
+                                          latency.get_count(),
+                                          to_milliseconds( latency.get_mean() ),
+                                          to_milliseconds( latency.get_percentile( 50.0 ) ),
+                                          to_milliseconds( latency.get_percentile( 90.0 ) ),
+                                          to_milliseconds( latency.get_percentile( 99.0 ) ),
+                                          to_milliseconds( latency.get_maximum() ) ) );
+        }
+
+        report.append( System.lineSeparator() );
+        for( COUNTER counter : COUNTER.values() )
+        {
+            report.append( String.format( "%-40s %8d%n", counter.name().toLowerCase(), get( counter ) ) ); //$NON-NLS-1$
+        }
+
+        report.append( System.lineSeparator() );
+        for( Protected_method_accessors.Accessor accessor : Protected_method_accessors.get_accessors() )
+        {
+            report.append( accessor.toString() ).append( System.lineSeparator() );
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Writes the report to a file.
+     *
+     * @param registry  The command registry.
+     * @param file      The file to write.
+     *
+     * @return Error status, true if error occurs, false otherwise.
+     */
+    public static boolean dump( Command_registry registry,
+                                File file )
+    {
+        try
+        {
+            Files.write( file.toPath(), report( registry ).getBytes( StandardCharsets.UTF_8 ) );
+            return false;
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( Metrics.class.getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not write " + file, exception ); //$NON-NLS-1$
+            return true;
+        }
+    }
+}
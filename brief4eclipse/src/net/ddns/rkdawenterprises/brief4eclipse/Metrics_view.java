@@ -0,0 +1,189 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.ui.part.ViewPart;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Command_registry.Command_handler;
+
+/**
+ * Shows the latency of each command that was executed, slowest first, and the counts
+ * of clipboard reads, reflective calls and document edits. The data can be refreshed,
+ * reset, or written to a file.
+ */
+public class Metrics_view extends ViewPart
+{
+    /**
+     * The view ID, as defined in plugin.xml.
+     */
+    public static final String ID = "net.ddns.rkdawenterprises.brief4eclipse.views.metrics"; //$NON-NLS-1$
+
+    /**
+     * The columns.
+     */
+    private static final String[] m_titles = { Messages.metrics_view_0, Messages.metrics_view_1,
+                                               Messages.metrics_view_2, Messages.metrics_view_3,
+                                               Messages.metrics_view_4, Messages.metrics_view_5,
+                                               Messages.metrics_view_6 };
+
+    /**
+     * The table of the metrics. Each row is an array of the column texts.
+     */
+    private TableViewer m_table_viewer = null;
+
+    @Override
+    public void createPartControl( Composite parent )
+    {
+        m_table_viewer = new TableViewer( parent,
+                                          SWT.H_SCROLL | SWT.V_SCROLL |
+                                          SWT.FULL_SELECTION );
+
+        for( int i = 0; i < m_titles.length; i++ )
+        {
+            final int column_index = i;
+            TableViewerColumn column = new TableViewerColumn( m_table_viewer,
+                                                              ( i == 0 ) ? SWT.LEFT : SWT.RIGHT );
+            column.getColumn().setText( m_titles[i] );
+            column.setLabelProvider( new ColumnLabelProvider()
+            {
+                @Override
+                public String getText( Object element )
+                {
+                    String[] row = (String[])element;
+                    return( ( column_index < row.length ) ? row[column_index] : "" ); //$NON-NLS-1$
+                }
+            } );
+        }
+
+        Table table = m_table_viewer.getTable();
+        table.setHeaderVisible( true );
+        table.setLinesVisible( true );
+
+        m_table_viewer.setContentProvider( new ArrayContentProvider() );
+
+        create_actions();
+        refresh();
+    }
+
+    /**
+     * Adds the refresh, reset and dump actions to the view's tool bar.
+     */
+    private void create_actions()
+    {
+        IToolBarManager tool_bar = getViewSite().getActionBars().getToolBarManager();
+
+        tool_bar.add( new Action( Messages.metrics_view_7 )
+        {
+            @Override
+            public void run()
+            {
+                refresh();
+            }
+        } );
+
+        tool_bar.add( new Action( Messages.metrics_view_8 )
+        {
+            @Override
+            public void run()
+            {
+                Metrics.reset( Activator.getDefault().get_command_registry() );
+                refresh();
+            }
+        } );
+
+        tool_bar.add( new Action( Messages.metrics_view_9 )
+        {
+            @Override
+            public void run()
+            {
+                dump();
+            }
+        } );
+    }
+
+    /**
+     * Reloads the table from the current metrics.
+     */
+    public void refresh()
+    {
+        Command_registry registry = Activator.getDefault().get_command_registry();
+        List<String[]> rows = new ArrayList<String[]>();
+
+        for( Command_handler handler : Metrics.get_executed_handlers( registry ) )
+        {
+            Latency_histogram latency = handler.get_latency();
+            rows.add( new String[] { handler.get_command_id().substring( Command_registry.COMMAND_ID_PREFIX.length() ),
+                                     Long.toString( latency.get_count() ),
+                                     Metrics.to_milliseconds( latency.get_mean() ),
+                                     Metrics.to_milliseconds( latency.get_percentile( 50.0 ) ),
+                                     Metrics.to_milliseconds( latency.get_percentile( 90.0 ) ),
+                                     Metrics.to_milliseconds( latency.get_percentile( 99.0 ) ),
+                                     Metrics.to_milliseconds( latency.get_maximum() ) } );
+        }
+
+        for( Metrics.COUNTER counter : Metrics.COUNTER.values() )
+        {
+            rows.add( new String[] { counter.name().toLowerCase(),
+                                     Long.toString( Metrics.get( counter ) ) } );
+        }
+
+        m_table_viewer.setInput( rows );
+
+        Table table = m_table_viewer.getTable();
+        for( int i = 0, n = table.getColumnCount(); i < n; i++ )
+        {
+            table.getColumn( i ).pack();
+        }
+    }
+
+    /**
+     * Asks for a file and writes the metrics report to it.
+     */
+    private void dump()
+    {
+        FileDialog dialog = new FileDialog( getSite().getShell(), SWT.SAVE );
+        dialog.setFileName( "brief4eclipse_metrics.txt" ); //$NON-NLS-1$
+        dialog.setOverwrite( true );
+
+        String path = dialog.open();
+        if( path == null ) return;
+
+        if( Metrics.dump( Activator.getDefault().get_command_registry(), new File( path ) ) )
+        {
+            Activator.beep();
+        }
+    }
+
+    @Override
+    public void setFocus()
+    {
+        m_table_viewer.getControl().setFocus();
+    }
+}
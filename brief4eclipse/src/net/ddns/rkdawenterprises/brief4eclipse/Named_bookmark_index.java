@@ -0,0 +1,487 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Bookmarks_support.Bookmark_info;
+
+/**
+ * The named bookmarks of one project, stored in a file in the plug-in's state location.
+ * The file is read when the project's bookmarks are first needed.
+ *
+ * The file has a versioned header, followed by a snapshot of the bookmarks grouped by
+ * the file they are in, followed by a journal of the changes since the snapshot. Every
+ * change is appended to the journal as it is made, so the file is never rewritten when
+ * the workbench closes. The file is rewritten as a new snapshot when it is read and the
+ * journal has grown larger than the snapshot, or ends with an incomplete record.
+ *
+ * The records and snapshots are encoded on the UI thread, and written to the file by the
+ * bookmark store job, in order, so no change waits for the file system.
+ *
+ *  header:     int MAGIC, int VERSION, varint number of files
+ *  snapshot:   for each file: UTF file path, varint number of bookmarks,
+ *              for each bookmark: UTF name, varint offset
+ *  journal:    for each change: byte PUT, UTF name, UTF file path, varint offset,
+ *              or byte REMOVE, UTF name
+ */
+public class Named_bookmark_index
+{
+    /**
+     * Identifies the file as a named bookmark index. "B4EB".
+     */
+    private static final int MAGIC = 0x42344542;
+
+    /**
+     * The file format version. Files with any other version are ignored.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Journal record of an added or moved bookmark.
+     */
+    private static final int RECORD_PUT = 1;
+
+    /**
+     * Journal record of a removed bookmark.
+     */
+    private static final int RECORD_REMOVE = 2;
+
+    /**
+     * The minimum number of journal records before the file is rewritten as a snapshot.
+     */
+    private static final int MIN_COMPACT_RECORDS = 64;
+
+    /**
+     * The index file.
+     */
+    private final File m_file;
+
+    /**
+     * The bookmarks, by name.
+     */
+    private final HashMap<String, Bookmark_info> m_bookmarks_by_name = new HashMap<String, Bookmark_info>();
+
+    /**
+     * The bookmarks, by the file path they are in.
+     */
+    private final ListMultimap<String, Bookmark_info> m_bookmarks_by_resource = ArrayListMultimap.create();
+
+    /**
+     * The job the file writes are handed to.
+     */
+    private final Bookmark_store_job m_store_job;
+
+    /**
+     * The number of records in the journal of the file.
+     */
+    private int m_journal_count = 0;
+
+    /**
+     * Indicates the file exists, or a snapshot of it was handed to the store job, so
+     * records can be appended to it.
+     */
+    private boolean m_file_exists = false;
+
+    /**
+     * Opens the index and reads its file, if it exists.
+     *
+     * @param file          The index file.
+     * @param store_job     The job the file writes are handed to.
+     */
+    protected Named_bookmark_index( File file,
+                                    Bookmark_store_job store_job )
+    {
+        m_file = file;
+        m_store_job = store_job;
+        read();
+    }
+
+    /**
+     * Reads the snapshot and replays the journal of the index file. Rewrites the file
+     * if the journal is large, incomplete or corrupt, keeping what was read before the
+     * incomplete or corrupt part.
+     */
+    private void read()
+    {
+        m_file_exists = m_file.exists();
+        if( !m_file_exists ) return;
+
+        boolean compact = false;
+        try( DataInputStream input = new DataInputStream( new BufferedInputStream( new FileInputStream( m_file ) ) ) )
+        {
+            if( ( input.readInt() != MAGIC ) || ( input.readInt() != VERSION ) )
+            {
+                Activator.log_info( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Ignoring bookmark index with unknown format <" + m_file + ">" ); //$NON-NLS-1$ //$NON-NLS-2$
+                return;
+            }
+
+            try
+            {
+                int resource_count = Varint_codec.read( input );
+                for( int i = 0; i < resource_count; i++ )
+                {
+                    String resource = input.readUTF();
+                    int count = Varint_codec.read( input );
+                    for( int j = 0; j < count; j++ )
+                    {
+                        String name = input.readUTF();
+                        put_entry( name, resource, Varint_codec.read( input ) );
+                    }
+                }
+
+                for( int record = input.read(); record != -1; record = input.read() )
+                {
+                    String name = input.readUTF();
+                    if( record == RECORD_PUT )
+                    {
+                        String resource = input.readUTF();
+                        put_entry( name, resource, Varint_codec.read( input ) );
+                    }
+                    else if( record == RECORD_REMOVE )
+                    {
+                        remove_entry( m_bookmarks_by_name.get( name ) );
+                    }
+                    else
+                    {
+                        throw new IOException( "Corrupt bookmark index" ); //$NON-NLS-1$
+                    }
+
+                    m_journal_count++;
+                }
+            }
+            catch( EOFException exception )
+            {
+                // A record was not completely written. Rewrite the file without it.
+                compact = true;
+            }
+            catch( IOException exception )
+            {
+                // Keep the bookmarks read before the corrupt data, and rewrite the file without it.
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Dropping the corrupt end of the bookmark index <" + m_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+                compact = true;
+            }
+        }
+        catch( EOFException exception )
+        {
+            // The header was not completely written.
+            compact = true;
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not read the bookmark index <" + m_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return;
+        }
+
+        if( compact || ( m_journal_count > Math.max( MIN_COMPACT_RECORDS, m_bookmarks_by_name.size() ) ) )
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Adds a bookmark to the in-memory index, replacing any bookmark with the same name.
+     *
+     * @param name      The bookmark name.
+     * @param resource  The file path of the bookmark.
+     * @param offset    The bookmark's offset in the file.
+     *
+     * @return  The bookmark.
+     */
+    private Bookmark_info put_entry( String name,
+                                     String resource,
+                                     int offset )
+    {
+        remove_entry( m_bookmarks_by_name.get( name ) );
+
+        Bookmark_info bmi = new Bookmark_info( offset, resource, name );
+        bmi.m_stored_offset = offset;
+        m_bookmarks_by_name.put( name, bmi );
+        m_bookmarks_by_resource.put( resource, bmi );
+
+        return bmi;
+    }
+
+    /**
+     * Removes a bookmark from the in-memory index.
+     *
+     * @param bmi   The bookmark, or null.
+     */
+    private void remove_entry( Bookmark_info bmi )
+    {
+        if( bmi == null ) return;
+
+        m_bookmarks_by_name.remove( bmi.m_name );
+        m_bookmarks_by_resource.remove( bmi.m_resource, bmi );
+    }
+
+    /**
+     * Finds the bookmark with the given name.
+     *
+     * @param name  The bookmark name.
+     *
+     * @return  The bookmark, or null if not in the index.
+     */
+    public Bookmark_info get( String name )
+    {
+        return m_bookmarks_by_name.get( name );
+    }
+
+    /**
+     * Gets the bookmarks in a file.
+     *
+     * @param resource  The file path.
+     *
+     * @return  The bookmarks in the file. Empty if none.
+     */
+    public List<Bookmark_info> get_bookmarks( String resource )
+    {
+        return m_bookmarks_by_resource.get( resource );
+    }
+
+    /**
+     * Getter.
+     *
+     * @return  The bookmarks in the index.
+     */
+    public Collection<Bookmark_info> get_bookmarks()
+    {
+        return m_bookmarks_by_name.values();
+    }
+
+    /**
+     * Creates a name that is not used by any bookmark in the index.
+     *
+     * @return  The new name.
+     */
+    public String new_name()
+    {
+        for( int i = m_bookmarks_by_name.size() + 1; ; i++ )
+        {
+            String name = String.format( Messages.named_bookmark_index_0, i );
+            if( !m_bookmarks_by_name.containsKey( name ) ) return name;
+        }
+    }
+
+    /**
+     * Adds a bookmark and appends it to the journal. Replaces any bookmark with the same name,
+     * which must have had its live position removed.
+     *
+     * @param name      The bookmark name.
+     * @param resource  The file path of the bookmark.
+     * @param offset    The bookmark's offset in the file.
+     *
+     * @return  The bookmark.
+     */
+    public Bookmark_info put( String name,
+                              String resource,
+                              int offset )
+    {
+        Bookmark_info bmi = put_entry( name, resource, offset );
+        append_put( bmi );
+
+        return bmi;
+    }
+
+    /**
+     * Appends the bookmark's offset to the journal if it moved since it was last stored.
+     * Call after writing back its live position.
+     *
+     * @param bmi   The bookmark.
+     */
+    public void update( Bookmark_info bmi )
+    {
+        if( ( bmi.m_offset == bmi.m_stored_offset ) || ( m_bookmarks_by_name.get( bmi.m_name ) != bmi ) ) return;
+
+        append_put( bmi );
+    }
+
+    /**
+     * Removes a bookmark and appends the removal to the journal. Its live position must have
+     * been removed.
+     *
+     * @param bmi   The bookmark.
+     */
+    public void remove( Bookmark_info bmi )
+    {
+        if( m_bookmarks_by_name.get( bmi.m_name ) != bmi ) return;
+
+        remove_entry( bmi );
+
+        try
+        {
+            ByteArrayOutputStream record_bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream( record_bytes );
+            record.writeByte( RECORD_REMOVE );
+            record.writeUTF( bmi.m_name );
+            append( record_bytes );
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not write the bookmark index <" + m_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Appends an added or moved bookmark to the journal.
+     *
+     * @param bmi   The bookmark.
+     */
+    private void append_put( Bookmark_info bmi )
+    {
+        try
+        {
+            ByteArrayOutputStream record_bytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream( record_bytes );
+            record.writeByte( RECORD_PUT );
+            record.writeUTF( bmi.m_name );
+            record.writeUTF( bmi.m_resource );
+            Varint_codec.write( record, bmi.m_offset );
+            append( record_bytes );
+
+            bmi.m_stored_offset = bmi.m_offset;
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not write the bookmark index <" + m_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+
+    /**
+     * Hands a journal record to the store job to append to the index file. A new snapshot,
+     * which already has the change, is written instead if the file does not exist.
+     *
+     * @param record_bytes  The encoded record.
+     */
+    private void append( ByteArrayOutputStream record_bytes )
+    {
+        if( !m_file_exists )
+        {
+            compact();
+            return;
+        }
+
+        m_store_job.request_index_write( this, record_bytes.toByteArray(), false );
+        m_journal_count++;
+    }
+
+    /**
+     * Encodes a snapshot of the bookmarks, with an empty journal, and hands it to the
+     * store job to replace the index file with.
+     *
+     * @return  Error status. True if an error occurs.
+     */
+    private boolean compact()
+    {
+        try
+        {
+            ByteArrayOutputStream snapshot_bytes = new ByteArrayOutputStream();
+            try( DataOutputStream output = new DataOutputStream( snapshot_bytes ) )
+            {
+                output.writeInt( MAGIC );
+                output.writeInt( VERSION );
+
+                ArrayList<String> resources = new ArrayList<String>( m_bookmarks_by_resource.keySet() );
+                Varint_codec.write( output, resources.size() );
+                for( String resource : resources )
+                {
+                    List<Bookmark_info> bookmarks = m_bookmarks_by_resource.get( resource );
+
+                    output.writeUTF( resource );
+                    Varint_codec.write( output, bookmarks.size() );
+                    for( Bookmark_info bmi : bookmarks )
+                    {
+                        output.writeUTF( bmi.m_name );
+                        Varint_codec.write( output, bmi.m_offset );
+                    }
+                }
+            }
+
+            m_store_job.request_index_write( this, snapshot_bytes.toByteArray(), true );
+
+            for( Bookmark_info bmi : m_bookmarks_by_name.values() )
+            {
+                bmi.m_stored_offset = bmi.m_offset;
+            }
+            m_journal_count = 0;
+            m_file_exists = true;
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not encode the bookmark index <" + m_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Writes to the index file. Called by the store job, in the order the writes were handed
+     * to it. A snapshot replaces the file only when completely written. A record is not
+     * appended if the file is missing, e.g. its snapshot could not be written, since the
+     * file would then have no header.
+     *
+     * @param bytes     The encoded snapshot or record.
+     * @param replace   True to replace the file with a snapshot, false to append a record.
+     */
+    protected void write( byte[] bytes,
+                          boolean replace )
+    {
+        try
+        {
+            if( replace )
+            {
+                m_file.getParentFile().mkdirs();
+
+                File temporary_file = new File( m_file.getParentFile(), m_file.getName() + ".tmp" ); //$NON-NLS-1$
+                Files.write( temporary_file.toPath(), bytes );
+                Files.move( temporary_file.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+            else if( m_file.exists() )
+            {
+                Files.write( m_file.toPath(), bytes, StandardOpenOption.APPEND );
+            }
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not write the bookmark index <" + m_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+    }
+}
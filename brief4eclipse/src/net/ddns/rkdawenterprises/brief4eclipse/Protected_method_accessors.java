@@ -0,0 +1,206 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the protected Eclipse methods the plug-in needs to call, such as
+ * MultiPageEditorPart.getActiveEditor(). Each method is looked up and made accessible
+ * once, the first time it is needed, and kept as a MethodHandle. A failed lookup is
+ * kept too, so it is not retried on every call.
+ *
+ * Each accessor counts how often it is used and how often it failed, to show how hot
+ * the protected paths are.
+ */
+public final class Protected_method_accessors
+{
+    /**
+     * Access to one protected method.
+     */
+    public static final class Accessor
+    {
+        /**
+         * The class that declares the method.
+         */
+        private final Class<?> m_declaring_class;
+
+        /**
+         * The name of the method.
+         */
+        private final String m_method_name;
+
+        /**
+         * The parameter types of the method.
+         */
+        private final Class<?>[] m_parameter_types;
+
+        /**
+         * The method, or null if not resolved or the lookup failed.
+         */
+        private MethodHandle m_handle = null;
+
+        /**
+         * The reason the lookup failed, or null.
+         */
+        private ReflectiveOperationException m_failure = null;
+
+        /**
+         * The number of times the method was asked for.
+         */
+        private long m_use_count = 0;
+
+        /**
+         * The number of times the method could not be provided.
+         */
+        private long m_failure_count = 0;
+
+        /**
+         * Creates the accessor. The method is not looked up until needed.
+         *
+         * @param declaring_class   The class that declares the method.
+         * @param method_name       The name of the method.
+         * @param parameter_types   The parameter types of the method.
+         */
+        private Accessor( Class<?> declaring_class,
+                          String method_name,
+                          Class<?>[] parameter_types )
+        {
+            m_declaring_class = declaring_class;
+            m_method_name = method_name;
+            m_parameter_types = parameter_types;
+        }
+
+        /**
+         * Gets the method handle, looking up the method the first time.
+         *
+         * @return  The method handle. The receiver is its first parameter.
+         *
+         * @throws NoSuchMethodException    If the method does not exist, now or on the first lookup.
+         * @throws IllegalAccessException   If the method can't be made accessible, now or on the first lookup.
+         */
+        public synchronized MethodHandle get_handle() throws NoSuchMethodException, IllegalAccessException
+        {
+            m_use_count++;
+            Metrics.count( Metrics.COUNTER.REFLECTIVE_CALL );
+
+            if( ( m_handle == null ) && ( m_failure == null ) )
+            {
+                try
+                {
+                    Method method = m_declaring_class.getDeclaredMethod( m_method_name, m_parameter_types );
+                    method.setAccessible( true );
+                    m_handle = MethodHandles.lookup().unreflect( method );
+                }
+                catch( NoSuchMethodException | IllegalAccessException exception )
+                {
+                    m_failure = exception;
+                }
+                catch( SecurityException exception )
+                {
+                    m_failure = new IllegalAccessException( exception.getMessage() );
+                }
+            }
+
+            if( m_handle != null ) return m_handle;
+
+            m_failure_count++;
+
+            if( m_failure instanceof NoSuchMethodException ) throw (NoSuchMethodException)m_failure;
+            throw (IllegalAccessException)m_failure;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  The number of times the method was asked for.
+         */
+        public synchronized long get_use_count()
+        {
+            return m_use_count;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  The number of times the method could not be provided.
+         */
+        public synchronized long get_failure_count()
+        {
+            return m_failure_count;
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            return( m_declaring_class.getSimpleName() + "." + m_method_name + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    m_use_count + " uses, " + m_failure_count + " failures" + //$NON-NLS-1$ //$NON-NLS-2$
+                    ( ( m_failure != null ) ? " (" + m_failure + ")" : "" ) ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        }
+    }
+
+    /**
+     * The accessors, by declaring class, method name and parameter types.
+     */
+    private static final Map<String, Accessor> m_accessors = new HashMap<String, Accessor>();
+
+    /**
+     * Not instantiated.
+     */
+    private Protected_method_accessors() {}
+
+    /**
+     * Gets the accessor for a protected method, creating it the first time.
+     * The method is looked up when the accessor is first used.
+     *
+     * @param declaring_class   The class that declares the method.
+     * @param method_name       The name of the method.
+     * @param parameter_types   The parameter types of the method.
+     *
+     * @return  The accessor.
+     */
+    public static synchronized Accessor get( Class<?> declaring_class,
+                                             String method_name,
+                                             Class<?>... parameter_types )
+    {
+        StringBuilder key = new StringBuilder( declaring_class.getName() ).append( '.' ).append( method_name );
+        for( Class<?> parameter_type : parameter_types )
+        {
+            key.append( ',' ).append( parameter_type.getName() );
+        }
+
+        return m_accessors.computeIfAbsent( key.toString(),
+                                            ( String k ) -> new Accessor( declaring_class, method_name, parameter_types ) );
+    }
+
+    /**
+     * Gets all the accessors, for reporting their counters.
+     *
+     * @return  The accessors.
+     */
+    public static synchronized List<Accessor> get_accessors()
+    {
+        Collection<Accessor> accessors = m_accessors.values();
+        return new ArrayList<Accessor>( accessors );
+    }
+}
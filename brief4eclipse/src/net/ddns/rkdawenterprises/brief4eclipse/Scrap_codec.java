@@ -0,0 +1,206 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.eclipse.swt.graphics.Point;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Scrap_support.Scrap_item;
+
+/**
+ * Encodes scrap items into a compact binary form for storage, and back.
+ *
+ *  byte    VERSION
+ *  byte    flags, FLAG_COLUMN_MODE and FLAG_DEFLATED
+ *  varint  column mode width, and varint column mode height, only if FLAG_COLUMN_MODE
+ *  varint  length of the UTF-8 text, in bytes
+ *  bytes   the UTF-8 text, deflated if FLAG_DEFLATED
+ */
+public final class Scrap_codec
+{
+    /**
+     * The encoding version. Items with any other version can't be decoded.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The item is a column mode item.
+     */
+    private static final int FLAG_COLUMN_MODE = 0x01;
+
+    /**
+     * The text is deflated.
+     */
+    private static final int FLAG_DEFLATED = 0x02;
+
+    /**
+     * Text larger than this, in UTF-8 bytes, is deflated.
+     */
+    private static final int DEFLATE_THRESHOLD = 4096;
+
+    /**
+     * Not instantiated.
+     */
+    private Scrap_codec() {}
+
+    /**
+     * Encodes the scrap item.
+     *
+     * @param scrap_item    The scrap item.
+     *
+     * @return  The encoded scrap item.
+     *
+     * @throws IOException
+     */
+    public static byte[] encode( Scrap_item scrap_item ) throws IOException
+    {
+        byte[] text = scrap_item.get_text().getBytes( StandardCharsets.UTF_8 );
+        byte[] payload = text;
+        int payload_length = text.length;
+        int flags = 0;
+
+        if( scrap_item.is_column_content() ) flags |= FLAG_COLUMN_MODE;
+
+        if( text.length > DEFLATE_THRESHOLD )
+        {
+            Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+            try
+            {
+                deflater.setInput( text );
+                deflater.finish();
+
+                // Only worth keeping if it is smaller.
+                byte[] deflated = new byte[text.length];
+                int deflated_length = 0;
+                while( !deflater.finished() && ( deflated_length < deflated.length ) )
+                {
+                    deflated_length += deflater.deflate( deflated, deflated_length, deflated.length - deflated_length );
+                }
+
+                if( deflater.finished() && ( deflated_length < text.length ) )
+                {
+                    payload = deflated;
+                    payload_length = deflated_length;
+                    flags |= FLAG_DEFLATED;
+                }
+            }
+            finally
+            {
+                deflater.end();
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( payload_length + 16 );
+        DataOutputStream output = new DataOutputStream( bytes );
+
+        output.writeByte( VERSION );
+        output.writeByte( flags );
+
+        if( scrap_item.is_column_content() )
+        {
+            Varint_codec.write( output, scrap_item.m_column_mode_size.x );
+            Varint_codec.write( output, scrap_item.m_column_mode_size.y );
+        }
+
+        Varint_codec.write( output, text.length );
+        output.write( payload, 0, payload_length );
+        output.flush();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a scrap item encoded by encode().
+     *
+     * @param encoded   The encoded scrap item.
+     *
+     * @return  The scrap item.
+     *
+     * @throws IOException  If the encoded scrap item is not valid.
+     */
+    public static Scrap_item decode( byte[] encoded ) throws IOException
+    {
+        DataInputStream input = new DataInputStream( new ByteArrayInputStream( encoded ) );
+
+        int version = input.readUnsignedByte();
+        if( version != VERSION ) throw new IOException( "Unknown scrap item version " + version ); //$NON-NLS-1$
+
+        int flags = input.readUnsignedByte();
+
+        Point column_mode_size = null;
+        if( ( flags & FLAG_COLUMN_MODE ) != 0 )
+        {
+            int width = Varint_codec.read( input );
+            int height = Varint_codec.read( input );
+            if( ( width < 0 ) || ( height < 0 ) ) throw new IOException( "Corrupt scrap item block size" ); //$NON-NLS-1$
+            column_mode_size = new Point( width, height );
+        }
+
+        int text_length = Varint_codec.read( input );
+        int payload_offset = encoded.length - input.available();
+        if( text_length < 0 ) throw new IOException( "Corrupt scrap item length" ); //$NON-NLS-1$
+
+        byte[] text;
+        if( ( flags & FLAG_DEFLATED ) != 0 )
+        {
+            // Deflate can't compress by more than about 1032 to 1, so a larger length is corrupt.
+            if( text_length > ( ( ( encoded.length - payload_offset ) * 1032L ) + 1032L ) )
+            {
+                throw new IOException( "Corrupt scrap item length" ); //$NON-NLS-1$
+            }
+
+            text = new byte[text_length];
+            Inflater inflater = new Inflater();
+            try
+            {
+                inflater.setInput( encoded, payload_offset, encoded.length - payload_offset );
+
+                int inflated_length = 0;
+                while( ( inflated_length < text_length ) && !inflater.finished() )
+                {
+                    int length = inflater.inflate( text, inflated_length, text_length - inflated_length );
+                    if( ( length == 0 ) && ( inflater.needsInput() || inflater.needsDictionary() ) ) break;
+                    inflated_length += length;
+                }
+
+                if( inflated_length != text_length ) throw new IOException( "Truncated scrap item" ); //$NON-NLS-1$
+            }
+            catch( DataFormatException exception )
+            {
+                throw new IOException( "Corrupt scrap item", exception ); //$NON-NLS-1$
+            }
+            finally
+            {
+                inflater.end();
+            }
+
+            return new Scrap_item( new String( text, StandardCharsets.UTF_8 ), column_mode_size );
+        }
+
+        if( encoded.length - payload_offset != text_length ) throw new IOException( "Truncated scrap item" ); //$NON-NLS-1$
+
+        return new Scrap_item( new String( encoded, payload_offset, text_length, StandardCharsets.UTF_8 ), column_mode_size );
+    }
+}
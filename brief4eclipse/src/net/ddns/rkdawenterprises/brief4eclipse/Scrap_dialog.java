@@ -18,7 +18,9 @@ package net.ddns.rkdawenterprises.brief4eclipse;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IEditorPart;
 
@@ -41,12 +43,17 @@ public class Scrap_dialog extends Abstract_table_info
     /**
      * The columns.
      */
-    private static final String[] m_titles = { Messages.scrap_dialog_0, Messages.scrap_dialog_1 };
+    private static final String[] m_titles = { Messages.scrap_dialog_4, Messages.scrap_dialog_0, Messages.scrap_dialog_1 };
 
     /**
      * The justification of the columns.
      */
-    private static final int[] m_justification = { SWT.CENTER, SWT.NONE };
+    private static final int[] m_justification = { SWT.CENTER, SWT.CENTER, SWT.NONE };
+
+    /**
+     * Pin/unpin button.
+     */
+    public final static int BUTTON_ID_PIN = IDialogConstants.CLIENT_ID + 3;
 
     /**
      * Constructs the text dialog instance with the given parent shell.
@@ -77,15 +84,20 @@ public class Scrap_dialog extends Abstract_table_info
         {
             case 0:
             {
-                return( si.is_column_content() ? Messages.scrap_dialog_2 : Messages.scrap_dialog_3 );
+                return( si.is_pinned() ? "*" : "" ); //$NON-NLS-1$ //$NON-NLS-2$
             }
 
             case 1:
+            {
+                return( si.is_column_content() ? Messages.scrap_dialog_2 : Messages.scrap_dialog_3 );
+            }
+
+            case 2:
             {
                 /// TODO: Should do this in pixels for the complete dialog...
                 int modified_max_width =
                         ( ( m_max_width_in_chars ) * 4 ) / 5;
-                String text = Activator.truncate_elipsis( si.m_text,
+                String text = Activator.truncate_elipsis( si.get_preview(),
                                                                   modified_max_width,
                                                                   false );
                 return text;
@@ -110,7 +122,7 @@ public class Scrap_dialog extends Abstract_table_info
     @Override
     public List< Object > get_table_items()
     {
-        return( new ArrayList<Object>( m_scrap_buffer.m_item_list ) );
+        return( new ArrayList<Object>( m_scrap_buffer.snapshot() ) );
     }
 
     @Override
@@ -135,18 +147,49 @@ public class Scrap_dialog extends Abstract_table_info
         return( (Scrap_item)get_selected_item() );
     }
 
+    @Override
+    protected void create_buttons( Composite parent,
+                                   int height )
+    {
+        super.create_buttons( parent, height );
+
+        create_button( parent,
+                       BUTTON_ID_PIN,
+                       Messages.scrap_dialog_5,
+                       null,
+                       SWT.DEFAULT,
+                       height,
+                       false );
+    }
+
+    @Override
+    protected void button_pressed( int id )
+    {
+        if( BUTTON_ID_PIN == id )
+        {
+            Scrap_item si = get_selected_scrap_item();
+            if( si == null ) return;
+
+            si.m_pinned = !si.m_pinned;
+            refresh_table();
+            return;
+        }
+
+        super.button_pressed( id );
+    }
+
     @Override
     public void clear_button_pressed( Object selected_item )
     {
         Scrap_item si = (Scrap_item)get_selected_item();
         if( si == null ) return;
 
-        m_scrap_buffer.m_item_list.remove( si );
+        m_scrap_buffer.remove( si );
     }
 
     @Override
     public void clear_all_button_pressed()
     {
-        m_scrap_buffer.m_item_list.clear();
+        m_scrap_buffer.clear();
     }
 }
@@ -0,0 +1,103 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Scrap_support.Scrap_item;
+
+/**
+ * Adds new scrap items to the scrap buffer in the background, then stores the scrap buffer.
+ *
+ * The UI thread only creates the scrap item from the clipboard text and queues it. Hashing,
+ * finding duplicates, spilling large items and writing the scrap store are done by this job,
+ * in the order the items were queued.
+ */
+public class Scrap_ingest_job extends Job
+{
+    /**
+     * The scrap support the items are added to.
+     */
+    private final Scrap_support m_scrap_support;
+
+    /**
+     * The scrap items waiting to be added, oldest first.
+     */
+    private final ConcurrentLinkedQueue<Scrap_item> m_queue = new ConcurrentLinkedQueue<Scrap_item>();
+
+    /**
+     * Creates the ingest job.
+     *
+     * @param scrap_support     The scrap support the items are added to.
+     */
+    protected Scrap_ingest_job( Scrap_support scrap_support )
+    {
+        super( Messages.scrap_ingest_job_0 );
+
+        m_scrap_support = scrap_support;
+
+        setSystem( true );
+        setPriority( Job.SHORT );
+    }
+
+    /**
+     * Queues a new scrap item to be added to the scrap buffer, and schedules the job.
+     *
+     * @param item  The new scrap item.
+     */
+    public void enqueue( Scrap_item item )
+    {
+        m_queue.add( item );
+        schedule();
+    }
+
+    /**
+     * Adds the queued items to the scrap buffer.
+     * Only called by the job, or after the job is cancelled and finished.
+     *
+     * @return  True if any items were added.
+     */
+    protected boolean drain()
+    {
+        boolean ingested = false;
+
+        Scrap_item item;
+        while( ( item = m_queue.poll() ) != null )
+        {
+            m_scrap_support.ingest( item );
+            ingested = true;
+        }
+
+        return ingested;
+    }
+
+    @Override
+    protected IStatus run( IProgressMonitor monitor )
+    {
+        if( !drain() ) return Status.OK_STATUS;
+
+        // Copies come in bursts, so the store is written once the queue is drained.
+        if( monitor.isCanceled() ) return Status.CANCEL_STATUS;
+        m_scrap_support.put_stored_scrap();
+
+        return Status.OK_STATUS;
+    }
+}
@@ -0,0 +1,391 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.swt.graphics.Point;
+
+import net.ddns.rkdawenterprises.brief4eclipse.Scrap_support.Scrap_item;
+
+/**
+ * The scrap history kept across sessions, stored in the plug-in's state location.
+ *
+ * The store file is memory-mapped when opened, and only its index is read. The index has
+ * each item's offset and length in the file, its column mode size, and a short preview
+ * for the scrap dialog. An item's text is decoded from the mapped file the first time it
+ * is needed, e.g. when it is pasted.
+ *
+ * Two store files are used alternately, and the one with the highest generation is read.
+ * The file being written is never the one that is mapped, which can't be replaced on some
+ * platforms while it is mapped. Each write goes to a temporary file that is then moved over
+ * the other store file, so a failed write leaves the previously written history intact.
+ *
+ *  header: int MAGIC, int VERSION, long generation, int number of items
+ *  index:  for each item: int offset, int length, int column mode width or -1,
+ *          int column mode height, int text length, int flags, long last used,
+ *          long content hash, short preview length, UTF-8 preview
+ *
+ * Version 1 files, without the flags, last used time and content hash, and version 2
+ * files, without the content hash, are still read.
+ *  items:  each item encoded by Scrap_codec
+ */
+public class Scrap_store
+{
+    /**
+     * Identifies the file as a scrap store. "B4ES".
+     */
+    private static final int MAGIC = 0x42344553;
+
+    /**
+     * The file format version. Files with any other version are ignored.
+     */
+    private static final int VERSION = 3;
+
+    /**
+     * The previous file format versions, still read.
+     */
+    private static final int VERSION_1 = 1;
+    private static final int VERSION_2 = 2;
+
+    /**
+     * Flag of a pinned item.
+     */
+    private static final int FLAG_PINNED = 0x1;
+
+    /**
+     * Flag of an item whose content hash is stored.
+     */
+    private static final int FLAG_CONTENT_HASH = 0x2;
+
+    /**
+     * The names of the alternating store files in the plug-in's state location.
+     */
+    private static final String[] FILE_NAMES = { "scrap_0.bin", "scrap_1.bin" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+    /**
+     * The maximum number of characters in an item's preview.
+     */
+    public static final int PREVIEW_LENGTH = 256;
+
+    /**
+     * The store files.
+     */
+    private File[] m_files = new File[FILE_NAMES.length];
+
+    /**
+     * The index of the store file that was read, and is mapped, or -1 if none.
+     */
+    private int m_current_file = -1;
+
+    /**
+     * The generation of the newest store file, read or written. Incremented on every write.
+     */
+    private long m_generation = 0;
+
+    /**
+     * The mapped contents of the store file that was read, or null if none.
+     */
+    private MappedByteBuffer m_mapped_file = null;
+
+    /**
+     * Creates the scrap store. Call open() to read the items.
+     *
+     * @param directory     The directory the store files are in.
+     */
+    protected Scrap_store( File directory )
+    {
+        for( int i = 0; i < FILE_NAMES.length; i++ )
+        {
+            m_files[i] = new File( directory, FILE_NAMES[i] );
+        }
+    }
+
+    /**
+     * Indicates a store file exists, i.e. the scrap history was stored at least once.
+     *
+     * @return  True if a store file exists.
+     */
+    public boolean exists()
+    {
+        for( File file : m_files )
+        {
+            if( file.exists() ) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Maps the newest valid store file and reads its index.
+     * The items' text is not read until needed.
+     *
+     * @return  The stored items, newest first. Empty if there are none.
+     */
+    public List<Scrap_item> open()
+    {
+        List<Scrap_item> newest_items = new ArrayList<Scrap_item>();
+
+        for( int i = 0; i < m_files.length; i++ )
+        {
+            if( !m_files[i].exists() ) continue;
+
+            try( FileChannel channel = FileChannel.open( m_files[i].toPath(), StandardOpenOption.READ ) )
+            {
+                // The mapping stays valid after the channel is closed.
+                MappedByteBuffer mapped_file = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+
+                if( mapped_file.getInt() != MAGIC ) continue;
+
+                int version = mapped_file.getInt();
+                if( ( version != VERSION ) && ( version != VERSION_2 ) && ( version != VERSION_1 ) ) continue;
+
+                long generation = mapped_file.getLong();
+                if( ( m_current_file != -1 ) && ( generation <= m_generation ) ) continue;
+
+                List<Scrap_item> items = read_index( mapped_file, version );
+
+                m_current_file = i;
+                m_generation = generation;
+                m_mapped_file = mapped_file;
+                newest_items = items;
+            }
+            catch( IOException | BufferUnderflowException | IllegalArgumentException exception )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Ignoring unreadable scrap store <" + m_files[i] + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+        }
+
+        return newest_items;
+    }
+
+    /**
+     * Reads the index of a mapped store file, positioned after the generation.
+     *
+     * @param mapped_file   The mapped store file.
+     * @param version       The file format version.
+     *
+     * @return  The items in the index, with their text not read.
+     */
+    private List<Scrap_item> read_index( ByteBuffer mapped_file,
+                                         int version )
+    {
+        int count = mapped_file.getInt();
+        List<Scrap_item> items = new ArrayList<Scrap_item>( count );
+
+        for( int i = 0; i < count; i++ )
+        {
+            int offset = mapped_file.getInt();
+            int length = mapped_file.getInt();
+            int width = mapped_file.getInt();
+            int height = mapped_file.getInt();
+            int text_length = mapped_file.getInt();
+            int flags = 0;
+            long last_used = 0;
+            long content_hash = 0;
+            if( version != VERSION_1 )
+            {
+                flags = mapped_file.getInt();
+                last_used = mapped_file.getLong();
+            }
+            if( version == VERSION )
+            {
+                content_hash = mapped_file.getLong();
+            }
+
+            byte[] preview = new byte[mapped_file.getShort() & 0xFFFF];
+            mapped_file.get( preview );
+
+            if( ( offset < 0 ) || ( length < 0 ) || ( offset + length > mapped_file.limit() ) )
+            {
+                throw new IllegalArgumentException( "Item out of bounds" ); //$NON-NLS-1$
+            }
+
+            Scrap_item item = new Scrap_item( null, ( width < 0 ) ? null : new Point( width, height ) );
+            item.m_store = this;
+            item.m_store_offset = offset;
+            item.m_store_length = length;
+            item.m_text_length = text_length;
+            item.m_pinned = ( flags & FLAG_PINNED ) != 0;
+            item.m_last_used = last_used;
+            item.m_content_hash = content_hash;
+            item.m_has_content_hash = ( flags & FLAG_CONTENT_HASH ) != 0;
+            item.m_preview = new String( preview, StandardCharsets.UTF_8 );
+            items.add( item );
+        }
+
+        return items;
+    }
+
+    /**
+     * Gets an item's encoded bytes from the mapped store file.
+     *
+     * @param item  The item.
+     *
+     * @return  The item encoded by Scrap_codec.
+     */
+    private byte[] read_encoded( Scrap_item item )
+    {
+        byte[] encoded = new byte[item.m_store_length];
+
+        // Each read uses its own view so the mapping's position is not shared.
+        ByteBuffer view = m_mapped_file.duplicate();
+        view.position( item.m_store_offset );
+        view.get( encoded );
+
+        return encoded;
+    }
+
+    /**
+     * Decodes an item's text from the mapped store file.
+     *
+     * @param item  The item.
+     *
+     * @return  The text, or null if it could not be decoded.
+     */
+    protected String read_text( Scrap_item item )
+    {
+        try
+        {
+            return Scrap_codec.decode( read_encoded( item ) ).m_text;
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not read scrap item from <" + m_files[m_current_file] + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+            return null;
+        }
+    }
+
+    /**
+     * Writes the items to the store file that is not mapped, through a temporary file which
+     * replaces it only when completely written. Items that were read from this store, or
+     * spilled to a file, are copied without being decoded.
+     *
+     * @param items     The items, newest first.
+     *
+     * @return  Error status. True if an error occurs.
+     */
+    public synchronized boolean write( List<Scrap_item> items )
+    {
+        int target_file = ( m_current_file + 1 ) % m_files.length;
+        File temporary_file = new File( m_files[target_file].getParentFile(), m_files[target_file].getName() + ".tmp" ); //$NON-NLS-1$
+
+        try
+        {
+            byte[][] encoded_items = new byte[items.size()][];
+            for( int i = 0; i < encoded_items.length; i++ )
+            {
+                Scrap_item item = items.get( i );
+                if( item.m_spill_file != null )
+                {
+                    encoded_items[i] = Files.readAllBytes( item.m_spill_file.toPath() );
+                }
+                else if( ( item.m_store == this ) && ( m_mapped_file != null ) )
+                {
+                    encoded_items[i] = read_encoded( item );
+                }
+                else
+                {
+                    encoded_items[i] = Scrap_codec.encode( item );
+                }
+            }
+
+            ByteArrayOutputStream index_bytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream( index_bytes );
+            byte[][] previews = new byte[items.size()][];
+            int header_length = 4 + 4 + 8 + 4;
+            int index_length = 0;
+            for( int i = 0; i < previews.length; i++ )
+            {
+                previews[i] = items.get( i ).get_preview().getBytes( StandardCharsets.UTF_8 );
+                index_length += ( 6 * 4 ) + ( 2 * 8 ) + 2 + previews[i].length;
+            }
+
+            int offset = header_length + index_length;
+            for( int i = 0; i < encoded_items.length; i++ )
+            {
+                Scrap_item item = items.get( i );
+                index.writeInt( offset );
+                index.writeInt( encoded_items[i].length );
+                index.writeInt( item.is_column_content() ? item.m_column_mode_size.x : -1 );
+                index.writeInt( item.is_column_content() ? item.m_column_mode_size.y : -1 );
+                index.writeInt( item.get_text_length() );
+                index.writeInt( ( item.m_pinned ? FLAG_PINNED : 0 ) | ( item.m_has_content_hash ? FLAG_CONTENT_HASH : 0 ) );
+                index.writeLong( item.m_last_used );
+                index.writeLong( item.m_content_hash );
+                index.writeShort( previews[i].length );
+                index.write( previews[i] );
+
+                offset += encoded_items[i].length;
+            }
+
+            try( DataOutputStream output = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temporary_file ) ) ) )
+            {
+                output.writeInt( MAGIC );
+                output.writeInt( VERSION );
+                output.writeLong( m_generation + 1 );
+                output.writeInt( items.size() );
+                index_bytes.writeTo( output );
+                for( byte[] encoded_item : encoded_items )
+                {
+                    output.write( encoded_item );
+                }
+            }
+
+            try
+            {
+                Files.move( temporary_file.toPath(), m_files[target_file].toPath(), StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch( AtomicMoveNotSupportedException exception )
+            {
+                Files.move( temporary_file.toPath(), m_files[target_file].toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+        catch( IOException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not write the scrap store <" + m_files[target_file] + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+
+            // The store files are untouched, only the partial temporary file is removed.
+            temporary_file.delete();
+            return true;
+        }
+
+        // The mapped file stays the current file, the items read from it are still decoded
+        // from it, so the next write replaces this file again, with a newer generation.
+        m_generation++;
+
+        return false;
+    }
+}
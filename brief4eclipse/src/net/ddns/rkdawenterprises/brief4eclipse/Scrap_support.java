@@ -17,23 +17,33 @@ package net.ddns.rkdawenterprises.brief4eclipse;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.List;
 
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.dnd.Clipboard;
 import org.eclipse.swt.dnd.TextTransfer;
+import org.eclipse.swt.dnd.Transfer;
+import org.eclipse.swt.dnd.TransferData;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
+import org.osgi.service.prefs.BackingStoreException;
 import org.osgi.service.prefs.Preferences;
 
 /**
@@ -65,10 +75,193 @@ public class Scrap_support
         protected String m_text = null;
 
         /**
-         * The block size of column mode type scrap. Remains null if the scrap item is normal mode.
+         * The block size of column mode type scrap, the width in characters and the number
+         * of rows. Remains null if the scrap item is normal mode.
          */
         protected Point m_column_mode_size = null;
 
+        /**
+         * The rows of a column mode item, split from the text when first needed.
+         */
+        protected transient String[] m_column_rows = null;
+
+        /**
+         * The scrap store the text is read from when first needed, or null if the text is in memory.
+         */
+        protected transient Scrap_store m_store = null;
+
+        /**
+         * The offset of the encoded item in the scrap store.
+         */
+        protected transient int m_store_offset = 0;
+
+        /**
+         * The length of the encoded item in the scrap store.
+         */
+        protected transient int m_store_length = 0;
+
+        /**
+         * The length of the text, in characters, known without reading the text.
+         */
+        protected transient int m_text_length = 0;
+
+        /**
+         * The beginning of the text, for display, known without reading the text.
+         */
+        protected transient String m_preview = null;
+
+        /**
+         * The file the encoded item was spilled to, or null if not spilled.
+         */
+        protected transient File m_spill_file = null;
+
+        /**
+         * Keep the text in memory once read. False for items larger than the spill threshold,
+         * which are read from their file every time instead.
+         */
+        protected transient boolean m_cache_text = true;
+
+        /**
+         * Pinned items are never evicted from the scrap buffer.
+         */
+        protected transient boolean m_pinned = false;
+
+        /**
+         * When the item was last copied or pasted, in milliseconds since the epoch.
+         * The least recently used items are evicted first. Set from both the UI thread and
+         * the ingest job.
+         */
+        protected transient volatile long m_last_used = System.currentTimeMillis();
+
+        /**
+         * The hash of the text, valid if m_has_content_hash is true.
+         */
+        protected transient long m_content_hash = 0;
+
+        /**
+         * Indicates m_content_hash is known. Set after m_content_hash, so a thread that sees
+         * it set also sees the hash.
+         */
+        protected transient volatile boolean m_has_content_hash = false;
+
+        /**
+         * Computes the 64-bit FNV-1a hash of a text.
+         *
+         * @param text  The text.
+         *
+         * @return  The hash of the text.
+         */
+        protected static long content_hash( String text )
+        {
+            long hash = 0xCBF29CE484222325L;
+            for( int i = 0; i < text.length(); i++ )
+            {
+                hash ^= text.charAt( i );
+                hash *= 0x100000001B3L;
+            }
+
+            return hash;
+        }
+
+        /**
+         * Gets the hash of the text, reading the text if the hash is not yet known.
+         *
+         * @return  The hash of the text.
+         */
+        protected long get_content_hash()
+        {
+            if( !m_has_content_hash )
+            {
+                m_content_hash = content_hash( get_text() );
+                m_has_content_hash = true;
+            }
+
+            return m_content_hash;
+        }
+
+        /**
+         * Getter.
+         *
+         * @return  True if the item is pinned.
+         */
+        public boolean is_pinned()
+        {
+            return m_pinned;
+        }
+
+        /**
+         * Gets the text, reading it from the spill file or scrap store if needed.
+         *
+         * @return  The text of the scrap item.
+         */
+        public String get_text()
+        {
+            if( m_text != null ) return m_text;
+
+            String text = null;
+            if( m_spill_file != null )
+            {
+                try
+                {
+                    text = Scrap_codec.decode( Files.readAllBytes( m_spill_file.toPath() ) ).m_text;
+                }
+                catch( IOException exception )
+                {
+                    Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                            "Could not read spilled scrap item <" + m_spill_file + ">", exception ); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+            }
+            else if( m_store != null )
+            {
+                text = m_store.read_text( this );
+            }
+
+            if( text == null ) text = ""; //$NON-NLS-1$
+
+            if( m_cache_text ) m_text = text;
+
+            return text;
+        }
+
+        /**
+         * The number of bytes of heap the text takes when kept in memory.
+         *
+         * @return  The number of bytes, or 0 if the text is not kept in memory.
+         */
+        protected long get_heap_size()
+        {
+            if( !m_cache_text ) return 0;
+            return( 2L * get_text_length() );
+        }
+
+        /**
+         * Gets the length of the text without reading it from the scrap store.
+         *
+         * @return  The length of the text, in characters.
+         */
+        public int get_text_length()
+        {
+            if( m_text != null ) return m_text.length();
+            return m_text_length;
+        }
+
+        /**
+         * Gets the beginning of the text, for display, without reading it from the scrap store.
+         *
+         * @return  Up to Scrap_store.PREVIEW_LENGTH characters of the beginning of the text.
+         */
+        public String get_preview()
+        {
+            if( m_preview == null )
+            {
+                int length = Math.min( m_text.length(), Scrap_store.PREVIEW_LENGTH );
+                if( ( length > 0 ) && ( length < m_text.length() ) && Character.isHighSurrogate( m_text.charAt( length - 1 ) ) ) length--;
+                m_preview = m_text.substring( 0, length );
+            }
+
+            return m_preview;
+        }
+
         /**
          * Indicates the scrap item is a column mode type.
          *
@@ -79,6 +272,54 @@ public class Scrap_support
             return ( m_column_mode_size != null );
         }
 
+        /**
+         * Gets the rows of a column mode item, without line delimiters.
+         *
+         * @return  The rows of the block.
+         */
+        public String[] get_column_rows()
+        {
+            if( m_column_rows != null ) return m_column_rows;
+
+            String[] rows = get_text().split( "\\r\\n|\\r|\\n", -1 ); //$NON-NLS-1$
+
+            // A trailing delimiter doesn't start another row.
+            if( ( rows.length > 1 ) && rows[rows.length - 1].isEmpty() )
+            {
+                rows = Arrays.copyOf( rows, rows.length - 1 );
+            }
+
+            if( m_cache_text ) m_column_rows = rows;
+
+            return rows;
+        }
+
+        /**
+         * Gets the width of a column mode item, the length of its longest row.
+         *
+         * @return  The width of the block, in characters.
+         */
+        public int get_column_width()
+        {
+            int width = 0;
+            for( String row : get_column_rows() )
+            {
+                width = Math.max( width, row.length() );
+            }
+
+            return width;
+        }
+
+        /**
+         * Sets the block size of a column mode item from its rows, in characters and rows.
+         */
+        protected void measure_column_block()
+        {
+            if( !is_column_content() ) return;
+
+            m_column_mode_size = new Point( get_column_width(), get_column_rows().length );
+        }
+
         /**
          * Creates a new scrap item.
          *
@@ -95,77 +336,450 @@ public class Scrap_support
         }
 
         /**
-         * De-serializes a scrap item.
+         * De-serializes a scrap item stored with Java serialization by earlier versions.
+         * Only used to migrate them to the scrap codec format.
+         *
+         * @param serialized_object     The serialized scrap item.
+         *
+         * @return  The scrap item de-serialized.
+         */
+        public static Scrap_item deserialize( String serialized_object )
+        {
+            byte bytes[] = Base64.getDecoder().decode( serialized_object.getBytes() );
+            ByteArrayInputStream bais = new ByteArrayInputStream( bytes );
+            ObjectInputStream ois = null;
+            try
+            {
+                ois = new ObjectInputStream( bais );
+                Scrap_item item = (Scrap_item)ois.readObject();
+
+                // The initializers of the transient fields are not run by de-serialization.
+                item.m_cache_text = true;
+                item.m_last_used = System.currentTimeMillis();
+
+                return item;
+            }
+            catch( IOException | ClassNotFoundException e )
+            {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The buffer that contains the list of scrap items.
+     */
+    public static class Scrap_buffer implements java.io.Serializable
+    {
+        private static final long serialVersionUID = 7745123235443436292L;
+
+        /**
+         * Preference key of the maximum number of scrap items in the scrap buffer.
+         */
+        public static final String MAX_ITEMS_PREFERENCE = "scrap_max_items"; //$NON-NLS-1$
+
+        /**
+         * Preference key of the maximum number of bytes of heap taken by the scrap items' text.
+         */
+        public static final String MAX_BYTES_PREFERENCE = "scrap_max_bytes"; //$NON-NLS-1$
+
+        /**
+         * Preference key of the size, in bytes of heap, above which a scrap item's text is
+         * kept in a file instead of in memory.
+         */
+        public static final String SPILL_THRESHOLD_PREFERENCE = "scrap_spill_threshold"; //$NON-NLS-1$
+
+        /**
+         * The default maximum number of scrap items in the scrap buffer.
+         */
+        private static final int DEFAULT_MAX_ITEMS = 10;
+
+        /**
+         * The default maximum number of bytes of heap taken by the scrap items' text.
+         */
+        private static final int DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+        /**
+         * The default size above which a scrap item's text is kept in a file.
+         */
+        private static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+        /**
+         * The maximum number of scrap items in the scrap buffer.
+         */
+        private transient int m_max_items = DEFAULT_MAX_ITEMS;
+
+        /**
+         * The maximum number of bytes of heap taken by the scrap items' text.
+         */
+        private transient long m_max_bytes = DEFAULT_MAX_BYTES;
+
+        /**
+         * The size above which a scrap item's text is kept in a file.
+         */
+        private transient long m_spill_threshold = DEFAULT_SPILL_THRESHOLD;
+
+        /**
+         * The directory the spilled scrap items are kept in, or null to keep everything in memory.
+         */
+        private transient File m_spill_directory = null;
+
+        /**
+         * The scrap buffer.
+         */
+        protected ArrayList<Scrap_item> m_item_list;
+
+        /**
+         * Identifies a text by its length and hash, for the content index.
+         */
+        private static final class Content_key
+        {
+            /**
+             * The length of the text, in characters.
+             */
+            private final int m_length;
+
+            /**
+             * The hash of the text, from Scrap_item.content_hash().
+             */
+            private final long m_hash;
+
+            /**
+             * Creates the key.
+             *
+             * @param length    The length of the text, in characters.
+             * @param hash      The hash of the text.
+             */
+            private Content_key( int length,
+                                 long hash )
+            {
+                m_length = length;
+                m_hash = hash;
+            }
+
+            @Override
+            public boolean equals( Object object )
+            {
+                if( !( object instanceof Content_key ) ) return false;
+
+                Content_key other = (Content_key)object;
+                return( ( m_length == other.m_length ) && ( m_hash == other.m_hash ) );
+            }
+
+            @Override
+            public int hashCode()
+            {
+                return( Long.hashCode( m_hash ) * 31 + m_length );
+            }
+        }
+
+        /**
+         * The items in the scrap buffer by the length and hash of their text. Several items
+         * only share a key on a hash collision, so the lists almost always have one item.
+         */
+        private transient HashMap<Content_key, ArrayList<Scrap_item>> m_content_index;
+
+        /**
+         * Creates the scrap buffer.
+         */
+        protected Scrap_buffer()
+        {
+            m_item_list = new ArrayList<Scrap_item>();
+            m_content_index = new HashMap<Content_key, ArrayList<Scrap_item>>();
+        }
+
+        /**
+         * Adds the item to the content index. Its hash must be known, so the text is not
+         * read again after it is spilled.
+         *
+         * @param item  The scrap item.
+         */
+        private void index( Scrap_item item )
+        {
+            Content_key key = new Content_key( item.get_text_length(), item.get_content_hash() );
+
+            ArrayList<Scrap_item> items = m_content_index.get( key );
+            if( items == null )
+            {
+                items = new ArrayList<Scrap_item>( 1 );
+                m_content_index.put( key, items );
+            }
+            items.add( item );
+        }
+
+        /**
+         * Removes the item from the content index.
+         *
+         * @param item  The scrap item.
+         */
+        private void unindex( Scrap_item item )
+        {
+            Content_key key = new Content_key( item.get_text_length(), item.m_content_hash );
+
+            ArrayList<Scrap_item> items = m_content_index.get( key );
+            if( items == null ) return;
+
+            for( int i = 0; i < items.size(); i++ )
+            {
+                if( items.get( i ) != item ) continue;
+
+                items.remove( i );
+                break;
+            }
+
+            if( items.isEmpty() ) m_content_index.remove( key );
+        }
+
+        /**
+         * Finds the item with the given text. The text is only compared with the items that
+         * have the same length and hash, i.e. with more than one only on a hash collision.
+         *
+         * @param text  The text.
+         * @param hash  The hash of the text, from Scrap_item.content_hash().
+         *
+         * @return  The scrap item with the text, or null if none.
+         */
+        protected synchronized Scrap_item find( String text,
+                                                long hash )
+        {
+            ArrayList<Scrap_item> items = m_content_index.get( new Content_key( text.length(), hash ) );
+            if( items == null ) return null;
+
+            for( Scrap_item item : items )
+            {
+                if( text.equals( item.get_text() ) ) return item;
+            }
+
+            return null;
+        }
+
+        /**
+         * Gets a consistent copy of the list of scrap items, which may be added to
+         * by the ingest job at any time.
+         *
+         * @return  The scrap items, newest first.
+         */
+        protected synchronized List<Scrap_item> snapshot()
+        {
+            return new ArrayList<Scrap_item>( m_item_list );
+        }
+
+        /**
+         * Moves an item in the buffer to be the newest item.
+         *
+         * @param item  The scrap item.
+         */
+        protected synchronized void move_to_newest( Scrap_item item )
+        {
+            mark_used( item );
+
+            if( m_item_list.get( 0 ) == item ) return;
+
+            m_item_list.remove( item );
+            m_item_list.add( 0, item );
+        }
+
+        /**
+         * Reads the limits from the preferences and prepares the spill directory.
+         * Spilled items left over from the previous session are deleted, their text
+         * is in the scrap store by now.
+         *
+         * @param spill_directory   The directory to keep the spilled scrap items in.
+         */
+        protected void configure( File spill_directory )
+        {
+            IPreferencesService preferences_service = Platform.getPreferencesService();
+            m_max_items = Math.max( 1, preferences_service.getInt( Activator.PLUGIN_ID, MAX_ITEMS_PREFERENCE, DEFAULT_MAX_ITEMS, null ) );
+            m_max_bytes = Math.max( 0, preferences_service.getLong( Activator.PLUGIN_ID, MAX_BYTES_PREFERENCE, DEFAULT_MAX_BYTES, null ) );
+            m_spill_threshold = Math.max( 0, preferences_service.getLong( Activator.PLUGIN_ID, SPILL_THRESHOLD_PREFERENCE, DEFAULT_SPILL_THRESHOLD, null ) );
+
+            m_spill_directory = spill_directory;
+            if( !m_spill_directory.isDirectory() && !m_spill_directory.mkdirs() )
+            {
+                m_spill_directory = null;
+                return;
+            }
+
+            File[] spill_files = m_spill_directory.listFiles();
+            if( spill_files == null ) return;
+            for( File spill_file : spill_files )
+            {
+                spill_file.delete();
+            }
+        }
+
+        /**
+         * Indicates the text of a scrap item of the given length is not kept in memory.
+         *
+         * @param text_length   The length of the text, in characters.
+         *
+         * @return  True if the text is too large to keep in memory.
+         */
+        protected boolean is_spill_size( int text_length )
+        {
+            return( ( 2L * text_length ) > m_spill_threshold );
+        }
+
+        /**
+         * Adds a scrap item that was read from storage to the end of the buffer. If it is too
+         * large to keep in memory, an item from the scrap store is read from the store every
+         * time, and any other item, i.e. one being migrated, is spilled to a file.
+         *
+         * @param item  The scrap item.
+         */
+        protected synchronized void add_stored( Scrap_item item )
+        {
+            // Items from a current scrap store have their hash. For the others the text is
+            // read once to hash it, without keeping it in memory.
+            if( !item.m_has_content_hash )
+            {
+                boolean cache_text = item.m_cache_text;
+                item.m_cache_text = false;
+                item.get_content_hash();
+                item.m_cache_text = cache_text;
+            }
+
+            if( is_spill_size( item.get_text_length() ) )
+            {
+                if( item.m_store != null )
+                {
+                    item.m_text_length = item.get_text_length();
+                    item.m_cache_text = false;
+                    item.m_text = null;
+                }
+                else if( m_spill_directory != null )
+                {
+                    item = spill( item );
+                }
+            }
+
+            m_item_list.add( item );
+            index( item );
+        }
+
+        /**
+         * Adds a new scrap item as the newest item. If it is too large its text is spilled to
+         * a file, and a spilled copy is added instead, since the UI thread may still be using
+         * the item as the clipboard item.
          *
-         * @param serialized_object     The serialized scrap item.
-         *
-         * @return  The scrap item de-serialized.
+         * @param item  The scrap item.
          */
-        public static Scrap_item deserialize( String serialized_object )
+        protected synchronized void add_newest( Scrap_item item )
         {
-            byte bytes[] = Base64.getDecoder().decode( serialized_object.getBytes() );
-            ByteArrayInputStream bais = new ByteArrayInputStream( bytes );
-            ObjectInputStream ois = null;
-            try
-            {
-                ois = new ObjectInputStream( bais );
-                return( (Scrap_item)ois.readObject() );
-            }
-            catch( IOException | ClassNotFoundException e )
+            item.get_content_hash();
+
+            if( ( m_spill_directory != null ) && is_spill_size( item.get_text_length() ) )
             {
-                return null;
+                item = spill( item );
             }
+
+            m_item_list.add( 0, item );
+            index( item );
         }
 
         /**
-         * Serializes a scrap item.
+         * Writes the scrap item's text to a spill file, and makes a copy of the item that reads
+         * its text from the file. The item itself is not changed.
          *
-         * @param object_to_serialize   The scrap item to serialize.
+         * @param item  The scrap item, with its text and hash.
          *
-         * @return  The serialized scrap item.
+         * @return  The spilled copy, or the item itself if the file can't be written.
          */
-        public static String serialize( Scrap_item object_to_serialize )
+        private Scrap_item spill( Scrap_item item )
         {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = null;
             try
             {
-                oos = new ObjectOutputStream( baos );
-                oos.writeObject( object_to_serialize );
-                oos.flush();
+                File spill_file = File.createTempFile( "scrap", ".bin", m_spill_directory ); //$NON-NLS-1$ //$NON-NLS-2$
+                Files.write( spill_file.toPath(), Scrap_codec.encode( item ) );
+
+                Scrap_item spilled_item = new Scrap_item( null, item.m_column_mode_size );
+                spilled_item.m_preview = item.get_preview();
+                spilled_item.m_text_length = item.m_text.length();
+                spilled_item.m_spill_file = spill_file;
+                spilled_item.m_cache_text = false;
+                spilled_item.m_pinned = item.m_pinned;
+                spilled_item.m_last_used = item.m_last_used;
+                spilled_item.m_content_hash = item.m_content_hash;
+                spilled_item.m_has_content_hash = item.m_has_content_hash;
+
+                return spilled_item;
             }
-            catch( IOException e )
+            catch( IOException exception )
             {
-                return null;
+                Activator.log_error( Scrap_buffer.class.getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Could not spill scrap item", exception ); //$NON-NLS-1$
             }
 
-            return( new String( Base64.getEncoder().encode( baos.toByteArray() ) ) );
+            return item;
         }
-    }
 
-    /**
-     * The buffer that contains the list of scrap items.
-     */
-    public static class Scrap_buffer implements java.io.Serializable
-    {
-        private static final long serialVersionUID = 7745123235443436292L;
+        /**
+         * Records that the scrap item was just copied or pasted.
+         *
+         * @param item  The scrap item.
+         */
+        protected void mark_used( Scrap_item item )
+        {
+            item.m_last_used = System.currentTimeMillis();
+        }
 
         /**
-         * The maximum number of scrap items in the scrap buffer.
+         * Removes the scrap item and deletes its spill file.
+         *
+         * @param item  The scrap item.
          */
-        private static final int MAX_ITEMS = 10;
+        protected synchronized void remove( Scrap_item item )
+        {
+            if( !m_item_list.remove( item ) ) return;
+
+            unindex( item );
+
+            if( item.m_spill_file != null ) item.m_spill_file.delete();
+        }
 
         /**
-         * The scrap buffer.
+         * Removes all the scrap items and deletes their spill files.
          */
-        protected ArrayList<Scrap_item> m_item_list;
+        protected synchronized void clear()
+        {
+            while( !m_item_list.isEmpty() )
+            {
+                remove( m_item_list.get( m_item_list.size() - 1 ) );
+            }
+        }
 
         /**
-         * Creates the scrap buffer.
+         * Evicts the least recently used items until the buffer is within its item count
+         * and byte budget. The newest item, which mirrors the system clipboard, and the
+         * pinned items are never evicted.
          */
-        protected Scrap_buffer()
+        protected synchronized void evict()
         {
-            m_item_list = new ArrayList<Scrap_item>();
+            long heap_size = 0;
+            for( Scrap_item item : m_item_list )
+            {
+                heap_size += item.get_heap_size();
+            }
+
+            while( ( m_item_list.size() > m_max_items ) || ( heap_size > m_max_bytes ) )
+            {
+                Scrap_item least_recently_used = null;
+                for( int i = 1; i < m_item_list.size(); i++ )
+                {
+                    Scrap_item item = m_item_list.get( i );
+                    if( item.m_pinned ) continue;
+
+                    if( ( least_recently_used == null ) || ( item.m_last_used < least_recently_used.m_last_used ) )
+                    {
+                        least_recently_used = item;
+                    }
+                }
+
+                if( least_recently_used == null ) return;
+
+                heap_size -= least_recently_used.get_heap_size();
+                remove( least_recently_used );
+            }
         }
 
         /**
@@ -235,11 +849,22 @@ public class Scrap_support
             display = PlatformUI.getWorkbench().getDisplay();
         }
 
+        m_clipboard = new Clipboard( display );
+
+        new SecureRandom().nextBytes( m_owner_id );
+
+        m_ingest_job = new Scrap_ingest_job( this );
+
         /*
-         * Call this first so latest clipboard item can be stored if it came from somewhere
+         * Get the latest clipboard item so it can be stored if it came from somewhere
          * outside of the plug-in. Have to assume it is not column mode content.
+         * Deferred so it doesn't hold up the creation of the editor proxy.
          */
-        syncronize_with_system_clipboard( display, null );
+        final Display sync_display = display;
+        display.asyncExec( () ->
+        {
+            if( m_clipboard != null ) syncronize_with_system_clipboard( sync_display, null );
+        } );
     }
 
     /**
@@ -247,89 +872,198 @@ public class Scrap_support
      */
     protected void dispose()
     {
+        // Finish ingesting the pending items before storing them.
+        m_ingest_job.cancel();
+        try
+        {
+            m_ingest_job.join();
+        }
+        catch( InterruptedException exception )
+        {
+            Thread.currentThread().interrupt();
+        }
+        m_ingest_job.drain();
+
         put_stored_scrap();
+
+        if( m_clipboard != null ) m_clipboard.dispose();
+        m_clipboard = null;
+    }
+
+    /**
+     * The system clipboard, kept for the life of the scrap support.
+     */
+    private Clipboard m_clipboard = null;
+
+    /**
+     * Identifies this instance as the owner of the clipboard contents, put on the clipboard
+     * with the Scrap_transfer type.
+     */
+    private final byte[] m_owner_id = new byte[8];
+
+    /**
+     * The scrap item with the clipboard text, or null if not known. It may still be
+     * waiting to be ingested into the scrap buffer.
+     */
+    private Scrap_item m_clipboard_item = null;
+
+    /**
+     * Adds new scrap items to the scrap buffer, and stores the scrap buffer, in the background.
+     */
+    private Scrap_ingest_job m_ingest_job = null;
+
+    /**
+     * Adds a scrap item to the scrap buffer. Called by the ingest job, in sequence order.
+     *
+     * @param item  The new scrap item.
+     */
+    protected void ingest( Scrap_item item )
+    {
+        synchronized( m_scrap_buffer )
+        {
+            add_item_checked( item );
+        }
     }
 
     /**
-     * Loads the scrap items from non-volatile preferences storage.
+     * The scrap store in the plug-in's state location.
+     */
+    private Scrap_store m_scrap_store = null;
+
+    /**
+     * The preferences node that the previous version stored the scrap items in, encoded by the scrap codec.
+     */
+    private static final String PREFERENCES_SCRAP_STORE_NODE = "scrap_store"; //$NON-NLS-1$
+
+    /**
+     * The preferences node that earlier versions stored the Java serialized scrap items in.
+     */
+    private static final String LEGACY_SCRAP_ITEMS_NODE = "scrap_items"; //$NON-NLS-1$
+
+    /**
+     * Loads the scrap items from the scrap store. Only the store's index is read, the text of
+     * each item is read when first needed. If there is no scrap store yet, the scrap items
+     * stored in the preferences by earlier versions are migrated.
      */
     private void get_stored_scrap()
     {
         m_scrap_buffer = new Scrap_buffer();
 
-        Preferences preferences = InstanceScope.INSTANCE.getNode( Activator.PLUGIN_ID );
-        if( preferences == null ) return;
+        File state_location = Activator.getDefault().getStateLocation().toFile();
+        m_scrap_buffer.configure( new File( state_location, "scrap_spill" ) ); //$NON-NLS-1$
 
-        Preferences scrap_items = preferences.node( "scrap_items" ); //$NON-NLS-1$
+        m_scrap_store = new Scrap_store( state_location );
+        if( m_scrap_store.exists() )
+        {
+            for( Scrap_item item : m_scrap_store.open() )
+            {
+                m_scrap_buffer.add_stored( item );
+            }
+        }
+        else
+        {
+            migrate_preferences_scrap();
+        }
 
-        String number_of_stored_items = scrap_items.get( "number_of_stored_items", "" ); //$NON-NLS-1$ //$NON-NLS-2$
-        if( number_of_stored_items.equals( "" ) ) return; //$NON-NLS-1$
+        // The limits may have been lowered since the history was stored.
+        m_scrap_buffer.evict();
+    }
 
-        int item_count = Integer.parseInt( number_of_stored_items );
+    /**
+     * Moves the scrap items stored in the preferences by earlier versions to the scrap store,
+     * then removes them from the preferences.
+     */
+    private void migrate_preferences_scrap()
+    {
+        Preferences preferences = InstanceScope.INSTANCE.getNode( Activator.PLUGIN_ID );
+        if( preferences == null ) return;
 
-        for( int number = 0; number < item_count; number++ )
+        try
         {
-            String scrap_items_serialized;
-            scrap_items_serialized = scrap_items.get( String.valueOf( number ), "" ); //$NON-NLS-1$
-            if( scrap_items_serialized.equals( "" ) ) continue; //$NON-NLS-1$
-
-            Scrap_item si = Scrap_item.deserialize( scrap_items_serialized );
-            if( si == null )
+            if( preferences.nodeExists( PREFERENCES_SCRAP_STORE_NODE ) )
             {
-                scrap_items.remove( String.valueOf( number ) );
-                continue;
+                get_preferences_stored_scrap( preferences.node( PREFERENCES_SCRAP_STORE_NODE ) );
             }
-
-            if( si.m_text == null )
+            else if( preferences.nodeExists( LEGACY_SCRAP_ITEMS_NODE ) )
             {
-                scrap_items.remove( String.valueOf( number ) );
-                continue;
+                get_legacy_stored_scrap( preferences.node( LEGACY_SCRAP_ITEMS_NODE ) );
             }
-
-            if( m_scrap_buffer.m_item_list.indexOf( si ) == -1 )
+            else
             {
-                m_scrap_buffer.m_item_list.add( si );
+                return;
             }
+
+            if( m_scrap_store.write( m_scrap_buffer.snapshot() ) ) return;
+
+            if( preferences.nodeExists( PREFERENCES_SCRAP_STORE_NODE ) ) preferences.node( PREFERENCES_SCRAP_STORE_NODE ).removeNode();
+            if( preferences.nodeExists( LEGACY_SCRAP_ITEMS_NODE ) ) preferences.node( LEGACY_SCRAP_ITEMS_NODE ).removeNode();
+        }
+        catch( BackingStoreException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not migrate the stored scrap items.", exception ); //$NON-NLS-1$
         }
     }
 
     /**
-     * Stores the scrap items to non-volatile preferences storage.
+     * Loads the scrap items stored in the preferences, encoded by the scrap codec.
+     *
+     * @param scrap_store   The preferences node of the previous version.
      */
-    private void put_stored_scrap()
+    private void get_preferences_stored_scrap( Preferences scrap_store )
     {
-        Preferences preferences = InstanceScope.INSTANCE.getNode( Activator.PLUGIN_ID );
-        if( preferences == null ) return;
+        int item_count = scrap_store.getInt( "number_of_stored_items", 0 ); //$NON-NLS-1$
+
+        for( int number = 0; number < item_count; number++ )
+        {
+            String encoded = scrap_store.get( String.valueOf( number ), "" ); //$NON-NLS-1$
+            if( encoded.equals( "" ) ) continue; //$NON-NLS-1$
 
-        Preferences scrap_items = preferences.node( "scrap_items" ); //$NON-NLS-1$
+            try
+            {
+                m_scrap_buffer.add_stored( Scrap_codec.decode( Base64.getDecoder().decode( encoded ) ) );
+            }
+            catch( IOException | IllegalArgumentException exception )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Discarding stored scrap item " + number, exception ); //$NON-NLS-1$
+            }
+        }
+    }
 
-        int number_of_items = m_scrap_buffer.m_item_list.size();
+    /**
+     * Loads the scrap items stored with Java serialization by earlier versions.
+     *
+     * @param scrap_items   The preferences node of the earlier versions.
+     */
+    private void get_legacy_stored_scrap( Preferences scrap_items )
+    {
+        String number_of_stored_items = scrap_items.get( "number_of_stored_items", "" ); //$NON-NLS-1$ //$NON-NLS-2$
+        if( number_of_stored_items.equals( "" ) ) return; //$NON-NLS-1$
 
-        scrap_items.put( "number_of_stored_items", String.valueOf( number_of_items ) ); //$NON-NLS-1$
+        int item_count = Integer.parseInt( number_of_stored_items );
 
-        for( int number = 0; number < number_of_items; number++ )
+        for( int number = 0; number < item_count; number++ )
         {
-            Scrap_item si = m_scrap_buffer.m_item_list.get( number );
-            if( si != null )
-            {
-                String bookmark_serialized = Scrap_item.serialize( si );
+            String scrap_items_serialized;
+            scrap_items_serialized = scrap_items.get( String.valueOf( number ), "" ); //$NON-NLS-1$
+            if( scrap_items_serialized.equals( "" ) ) continue; //$NON-NLS-1$
 
-                // Make sure the value has changed before committing it to storage.
-                String stored_bookmark_serialized = scrap_items.get( String.valueOf( number ), "" ); //$NON-NLS-1$
+            Scrap_item si = Scrap_item.deserialize( scrap_items_serialized );
+            if( ( si == null ) || ( si.m_text == null ) ) continue;
 
-                if( !bookmark_serialized.equals( stored_bookmark_serialized ) )
-                {
-                    scrap_items.put( String.valueOf( number ), bookmark_serialized );
-                }
-            }
-            else
-            {
-                // No bookmark for this number, so clear the key.
-                scrap_items.remove( String.valueOf( number ) );
-            }
+            m_scrap_buffer.add_stored( si );
         }
     }
 
+    /**
+     * Stores the scrap items to the scrap store.
+     */
+    protected void put_stored_scrap()
+    {
+        m_scrap_store.write( m_scrap_buffer.snapshot() );
+    }
+
     /**
      * Gets the number of scrap items currently in the scrap buffer.
      *
@@ -337,30 +1071,43 @@ public class Scrap_support
      */
     protected int get_item_count()
     {
-        return m_scrap_buffer.m_item_list.size();
+        return m_scrap_buffer.snapshot().size();
     }
 
     /**
-     * Indicates that the most recent scrap item is a column mode item.
+     * Gets the scrap item with the clipboard text, or the newest item if that is not known.
      *
-     * @return  True if the most recent scrap item is a column mode item.
+     * @return  The scrap item, or null if none.
      */
-    protected boolean clipboard_is_column_content()
+    private Scrap_item get_newest_item()
     {
-        if( m_scrap_buffer.m_item_list.isEmpty() ) return false;
-        return( ( m_scrap_buffer.m_item_list.get( 0 ) ).is_column_content() );
+        if( m_clipboard_item != null ) return m_clipboard_item;
+
+        List<Scrap_item> items = m_scrap_buffer.snapshot();
+        if( items.isEmpty() ) return null;
+        return items.get( 0 );
+    }
+
+    /**
+     * Records that the newest scrap item was pasted from the system clipboard.
+     */
+    protected void newest_item_pasted()
+    {
+        Scrap_item newest_item = get_newest_item();
+        if( newest_item == null ) return;
+        m_scrap_buffer.mark_used( newest_item );
     }
 
     /**
-     * The size of the most recent scrap item if it is a column mode item.
+     * Indicates that the most recent scrap item is a column mode item.
      *
-     * @return  The size of the most recent scrap item if it is a column mode item.
-     *          Otherwise returns null.
+     * @return  True if the most recent scrap item is a column mode item.
      */
-    protected Point clipboard_column_mode_size()
+    protected boolean clipboard_is_column_content()
     {
-        if( m_scrap_buffer.m_item_list.isEmpty() ) return null;
-        return( ( m_scrap_buffer.m_item_list.get( 0 ) ).m_column_mode_size );
+        Scrap_item newest_item = get_newest_item();
+        if( newest_item == null ) return false;
+        return( newest_item.is_column_content() );
     }
 
     /**
@@ -378,13 +1125,15 @@ public class Scrap_support
     }
 
     /**
-     * Performs the copy operation which adds the current clipboard to the scrap buffer
-     * and calls the given copy method.
+     * Performs the copy operation which calls the given copy method, adds the copied text
+     * to the scrap buffer, and puts it on the system clipboard.
      *
      * @param display   The current display.
+     * @param text      The text being copied.
      * @param copy      The copy method to call.
      */
     protected void copy(  Display display,
+                          String text,
                           i_editor_copy copy )
     {
         /*
@@ -396,9 +1145,8 @@ public class Scrap_support
         // Copy callback.
         Point column_mode_size = copy.copy();
 
-        // Get the copied item.
-        syncronize_with_system_clipboard( display,
-                                          column_mode_size );
+        set_clipboard( text,
+                       column_mode_size );
     }
 
     /**
@@ -416,13 +1164,15 @@ public class Scrap_support
     }
 
     /**
-     * Performs the cut operation which adds the current clipboard to the scrap buffer
-     * and calls the given cut method.
+     * Performs the cut operation which calls the given cut method, adds the cut text
+     * to the scrap buffer, and puts it on the system clipboard.
      *
      * @param display   The current display.
-     * @param cut      The cut method to call.
+     * @param text      The text being cut.
+     * @param cut       The cut method to call.
      */
     protected void cut( Display display,
+                        String text,
                         i_editor_cut cut )
     {
         /*
@@ -434,89 +1184,188 @@ public class Scrap_support
         // Cut callback.
         Point column_mode_size = cut.cut();
 
-        // Get the copied item.
-        syncronize_with_system_clipboard( display,
-                                          column_mode_size );
+        set_clipboard( text,
+                       column_mode_size );
     }
 
     /**
-     * Obtains the latest system clipboard item, and makes sure the scrap buffer has it.
+     * Puts the text on the system clipboard with the ownership marker, and queues it to be
+     * added to the scrap buffer as the newest item. The clipboard is written, never read back.
      *
-     * @param display           The current display.
-     * @param column_mode_size  The size of the column mode block if column mode, otherwise -1.
+     * @param text              The copied or cut text.
+     * @param column_mode_size  The size of the column mode block if column mode, otherwise null.
      */
-    protected void syncronize_with_system_clipboard( Display display,
-                                                     Point column_mode_size )
+    private void set_clipboard( String text,
+                                Point column_mode_size )
     {
-        final Clipboard clipboard = new Clipboard( display );
+        // The clipboard doesn't take empty text.
+        if( ( text == null ) || text.isEmpty() ) return;
+
+        m_clipboard_item = new Scrap_item( text, column_mode_size );
 
-        String system_string = (String)clipboard.getContents( TextTransfer.getInstance() );
-        if( system_string != null )
+        if( !m_clipboard_item.is_column_content() )
         {
-            if( m_scrap_buffer.m_item_list.isEmpty() )
-            {
-                m_scrap_buffer.m_item_list.add( new Scrap_item( system_string, column_mode_size ) );
-            }
-            else
-            {
-                add_item_checked( system_string, column_mode_size );
-            }
+            m_clipboard.setContents( new Object[] { text, m_owner_id },
+                                     new Transfer[] { TextTransfer.getInstance(), Scrap_transfer.get_instance() } );
+        }
+        else
+        {
+            m_clipboard_item.measure_column_block();
+
+            // The block is also published with its rows, for other instances to paste as a block.
+            m_clipboard.setContents( new Object[] { text, m_owner_id, m_clipboard_item },
+                                     new Transfer[] { TextTransfer.getInstance(), Scrap_transfer.get_instance(),
+                                                      Column_block_transfer.get_instance() } );
+        }
+
+        m_ingest_job.enqueue( m_clipboard_item );
+    }
+
+    /**
+     * Indicates the system clipboard still has what this instance last put on it,
+     * so m_clipboard_item is the clipboard text.
+     *
+     * @return  True if no other application has taken ownership of the clipboard.
+     */
+    private boolean owns_clipboard()
+    {
+        Metrics.count( Metrics.COUNTER.CLIPBOARD_READ );
+        Object owner_id = m_clipboard.getContents( Scrap_transfer.get_instance() );
+
+        return( ( m_clipboard_item != null ) && ( owner_id instanceof byte[] ) &&
+                Arrays.equals( (byte[])owner_id, m_owner_id ) );
+    }
+
+    /**
+     * Indicates the clipboard has a column block. Only the names of the types on the
+     * clipboard are read.
+     *
+     * @return  True if the clipboard has a Column_block_transfer type.
+     */
+    private boolean column_block_available()
+    {
+        for( TransferData transfer_data : m_clipboard.getAvailableTypes() )
+        {
+            if( Column_block_transfer.get_instance().isSupportedType( transfer_data ) ) return true;
         }
 
-        clipboard.dispose();
+        return false;
+    }
+
+    /**
+     * Obtains the latest system clipboard item, and queues it to be added to the scrap buffer.
+     * The clipboard text is only read if another application has put something on the
+     * clipboard since this instance did.
+     *
+     * @param display           The current display.
+     * @param column_mode_size  The size of the column mode block if column mode, otherwise -1.
+     */
+    protected void syncronize_with_system_clipboard( Display display,
+                                                     Point column_mode_size )
+    {
+        get_clipboard_item( display, column_mode_size );
 
 //        print_scrap_items();
     }
 
     /**
-     * Adds the scrap information as an scrap item to the scrap buffer if it is new, otherwise
-     * updates its location to the newest item. List index 0 is always the newest item.
+     * Gets the scrap item that is on the system clipboard, synchronizing with the
+     * clipboard first if another application has put something on it.
      *
-     * It first looks for the string in the scrap buffer. If it finds it, it removes the
-     * scrap item from its previous location, then adds it back to index 0. It preserves
-     * the column mode size value.
+     * @param display   The current display.
      *
-     * If the string is not currently in the buffer, it just adds it with the given column
-     * mode size value to index 0.
+     * @return  The scrap item with the clipboard text, or null if the clipboard has no text.
+     */
+    protected Scrap_item get_clipboard_item( Display display )
+    {
+        return get_clipboard_item( display, null );
+    }
+
+    /**
+     * Gets the scrap item that is on the system clipboard. If another application has put
+     * something on the clipboard, its text is read on this, the UI, thread, and queued to
+     * be hashed and added to the scrap buffer by the ingest job.
      *
-     * If the buffer gets too many items, the oldest is deleted. The oldest item has index
-     * of size() - 1.
+     * @param display           The current display.
+     * @param column_mode_size  The size of the column mode block if column mode, otherwise null.
      *
-     * @param string            The scrap/clipboard item to add to the buffer or update as newest.
-     * @param column_mode_size  The block size of the item to add if it is a column mode item,
-     *                          or null if a line or normal mode item.
+     * @return  The scrap item with the clipboard text, or null if the clipboard has no text.
      */
-    private void add_item_checked( String string,
-                                   Point column_mode_size )
+    private Scrap_item get_clipboard_item( Display display,
+                                           Point column_mode_size )
     {
-        if( string == null ) return;
+        if( owns_clipboard() ) return m_clipboard_item;
 
-        // Remove then add back this item if it is already in the list so it will always be the most recent item.
-        Scrap_item add_back_item = null;
-        for( Iterator< Scrap_item > iterator = m_scrap_buffer.m_item_list.iterator(); iterator.hasNext(); )
+        // A block copied by another instance of the plug-in.
+        if( column_block_available() )
         {
-            Scrap_item si = iterator.next();
-            if( string.equals( si.m_text ) )
+            Metrics.count( Metrics.COUNTER.CLIPBOARD_READ );
+            Object column_block = m_clipboard.getContents( Column_block_transfer.get_instance() );
+            if( column_block instanceof Scrap_item )
             {
-                add_back_item = si;
-                iterator.remove();
+                m_clipboard_item = (Scrap_item)column_block;
+                m_ingest_job.enqueue( m_clipboard_item );
+
+                return m_clipboard_item;
             }
         }
 
-        if( add_back_item == null )
+        Metrics.count( Metrics.COUNTER.CLIPBOARD_READ );
+        String system_string = (String)m_clipboard.getContents( TextTransfer.getInstance() );
+        if( system_string == null )
         {
-            m_scrap_buffer.m_item_list.add( 0, new Scrap_item( string,
-                                                               column_mode_size ) );
+            m_clipboard_item = null;
+            return null;
         }
-        else
+
+        // Still the same foreign text as the last time it was read.
+        if( ( m_clipboard_item != null ) &&
+                ( system_string.length() == m_clipboard_item.get_text_length() ) &&
+                ( Scrap_item.content_hash( system_string ) == m_clipboard_item.get_content_hash() ) )
         {
-            m_scrap_buffer.m_item_list.add( 0, add_back_item );
+            return m_clipboard_item;
         }
 
-        while( m_scrap_buffer.m_item_list.size() > Scrap_buffer.MAX_ITEMS )
+        m_clipboard_item = new Scrap_item( system_string, column_mode_size );
+        m_ingest_job.enqueue( m_clipboard_item );
+
+        return m_clipboard_item;
+    }
+
+    /**
+     * Adds the scrap information as an scrap item to the scrap buffer if it is new, otherwise
+     * updates its location to the newest item. List index 0 is always the newest item.
+     *
+     * It first looks for the string in the scrap buffer, by its hash. If it finds it, it
+     * moves the scrap item from its previous location to index 0. It preserves the column
+     * mode size value.
+     *
+     * If the string is not currently in the buffer, it just adds the item, with its column
+     * mode size value, to index 0.
+     *
+     * If the buffer gets too many items, or too many bytes, the least recently used items
+     * that are not pinned are deleted.
+     *
+     * @param si    The scrap/clipboard item to add to the buffer or update as newest.
+     */
+    private void add_item_checked( Scrap_item si )
+    {
+        String string = si.m_text;
+        if( string == null ) return;
+
+        long hash = si.get_content_hash();
+
+        // Move this item to the front if it is already in the list so it will always be the most recent item.
+        Scrap_item existing_item = m_scrap_buffer.find( string, hash );
+        if( existing_item != null )
         {
-            m_scrap_buffer.m_item_list.remove( m_scrap_buffer.m_item_list.size() - 1 );
+            m_scrap_buffer.move_to_newest( existing_item );
+            return;
         }
+
+        m_scrap_buffer.add_newest( si );
+
+        m_scrap_buffer.evict();
     }
 
     /**
@@ -570,8 +1419,9 @@ public class Scrap_support
 
         if( selected_scrap_item == null ) return;
 
-        if( ( selected_scrap_item != null ) && ( selected_scrap_item.m_text.length() > 0 ) )
+        if( ( selected_scrap_item != null ) && ( selected_scrap_item.get_text_length() > 0 ) )
         {
+            m_scrap_buffer.mark_used( selected_scrap_item );
             paste.paste( selected_scrap_item );
         }
 
@@ -583,11 +1433,11 @@ public class Scrap_support
     {
         StringBuilder message = new StringBuilder();
         boolean no_scrap_items = true;
-        for( Scrap_item si : m_scrap_buffer.m_item_list )
+        for( Scrap_item si : m_scrap_buffer.snapshot() )
         {
             no_scrap_items = false;
             message.append( "\tScrap " ); //$NON-NLS-1$
-            String text = si.m_text;
+            String text = si.get_text();
             text = text.replace( "\r", "\\r" ); //$NON-NLS-1$ //$NON-NLS-2$
             text = text.replace( "\n", "\\n" ); //$NON-NLS-1$ //$NON-NLS-2$
             message.append( " = [" + text + //$NON-NLS-1$
@@ -0,0 +1,86 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import org.eclipse.swt.dnd.ByteArrayTransfer;
+import org.eclipse.swt.dnd.TransferData;
+
+/**
+ * A private clipboard type put on the clipboard alongside the text of every copy and cut.
+ * While it is still on the clipboard no other application has taken ownership, so the
+ * clipboard text is the newest scrap item and does not have to be read back.
+ *
+ * The contents are an identifier of the plug-in instance, so another Eclipse instance
+ * with this plug-in doesn't look like the owner.
+ */
+public class Scrap_transfer extends ByteArrayTransfer
+{
+    /**
+     * The name of the clipboard type.
+     */
+    private static final String TYPE_NAME = "net.ddns.rkdawenterprises.brief4eclipse.scrap"; //$NON-NLS-1$
+
+    /**
+     * The registered identifier of the clipboard type.
+     */
+    private static final int TYPE_ID = registerType( TYPE_NAME );
+
+    /**
+     * The single instance.
+     */
+    private static final Scrap_transfer m_instance = new Scrap_transfer();
+
+    /**
+     * Singleton, use get_instance().
+     */
+    private Scrap_transfer() {}
+
+    /**
+     * Gets the single instance.
+     *
+     * @return  The instance.
+     */
+    public static Scrap_transfer get_instance()
+    {
+        return m_instance;
+    }
+
+    @Override
+    protected int[] getTypeIds()
+    {
+        return new int[] { TYPE_ID };
+    }
+
+    @Override
+    protected String[] getTypeNames()
+    {
+        return new String[] { TYPE_NAME };
+    }
+
+    @Override
+    protected void javaToNative( Object object,
+                                 TransferData transfer_data )
+    {
+        if( !( object instanceof byte[] ) ) return;
+        super.javaToNative( object, transfer_data );
+    }
+
+    @Override
+    protected Object nativeToJava( TransferData transfer_data )
+    {
+        return super.nativeToJava( transfer_data );
+    }
+}
@@ -15,34 +15,41 @@
 
  package net.ddns.rkdawenterprises.brief4eclipse;
 
-import java.awt.AWTException;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.regex.PatternSyntaxException;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.jface.bindings.keys.KeyLookupFactory;
-import org.eclipse.jface.bindings.keys.ParseException;
 import org.eclipse.jface.dialogs.IDialogSettings;
+import org.eclipse.jface.dialogs.IPageChangeProvider;
+import org.eclipse.jface.dialogs.IPageChangedListener;
+import org.eclipse.jface.dialogs.PageChangedEvent;
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IBlockTextSelection;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IFindReplaceTarget;
 import org.eclipse.jface.text.IFindReplaceTargetExtension3;
-import org.eclipse.jface.text.ITextOperationTarget;
-import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.IRewriteTarget;
 import org.eclipse.jface.text.ITextViewerExtension5;
 import org.eclipse.jface.text.JFaceTextUtil;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.StructuredSelection;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.ST;
 import org.eclipse.swt.custom.StyledText;
-import org.eclipse.swt.dnd.Clipboard;
-import org.eclipse.swt.dnd.TextTransfer;
+import org.eclipse.swt.custom.VerifyKeyListener;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.VerifyEvent;
 import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Control;
@@ -50,12 +57,19 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.text.edits.DeleteEdit;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IPartListener2;
 import org.eclipse.ui.IViewPart;
 import org.eclipse.ui.IWorkbenchCommandConstants;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.IWorkbenchPartReference;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.forms.editor.FormEditor;
 import org.eclipse.ui.handlers.IHandlerService;
@@ -130,15 +144,20 @@ public class Text_editor_proxy
     }
 
     /**
-     * The key mapper for command insertion.
+     * Replays repeated commands in-process.
      */
-    private SWT_to_AWT_key_helper m_swt_vk_key_mapper = null;
+    private Command_replay_engine m_command_replay_engine = null;
 
     /**
      * Handles bookmark functionality.
      */
     private Bookmarks_support m_bookmarks_support = null;
 
+    /**
+     * Handles keystroke macro functionality.
+     */
+    private Macro_support m_macro_support = null;
+
     /**
      * Handles scrap buffer functionality.
      */
@@ -160,46 +179,234 @@ public class Text_editor_proxy
      * @throws IllegalAccessException
      * @throws SecurityException
      * @throws NoSuchMethodException
-     * @throws AWTException
      */
     protected Text_editor_proxy( IWorkbenchWindow workbench_window,
                                  IEditorPart active_editor )
-        throws IllegalArgumentException, NoSuchMethodException, SecurityException, IllegalAccessException, InvocationTargetException, AWTException
+        throws IllegalArgumentException, NoSuchMethodException, SecurityException, IllegalAccessException, InvocationTargetException
     {
+        // Created first, so the first editor binding and window are attached to the bookmarks.
+        m_bookmarks_support = new Bookmarks_support( this );
+
         if( active_editor != null )
         {
-            set_editor( workbench_window, active_editor );
+            try
+            {
+                set_editor( workbench_window, active_editor );
+            }
+            catch( Exception exception )
+            {
+                // The proxy is not used, so stop the bookmarks listening to the window.
+                dispose();
+                throw exception;
+            }
         }
 
-        m_swt_vk_key_mapper = new SWT_to_AWT_key_helper();
+        m_command_replay_engine = new Command_replay_engine( this );
 
-        m_bookmarks_support = new Bookmarks_support( this );
+        m_macro_support = new Macro_support( this );
         m_scrap_buffer_support = new Scrap_support( this );
     }
 
     /**
-     * Sets the active editor and associated styled text.
+     * The bindings of the editors already used, by the editor as given by the workbench.
+     */
+    private final HashMap<IEditorPart, Editor_binding> m_editor_bindings = new HashMap<IEditorPart, Editor_binding>();
+
+    /**
+     * The binding of the active editor.
+     */
+    private Editor_binding m_editor_binding = null;
+
+    /**
+     * Getter.
+     *
+     * @return  The binding of the active editor.
+     */
+    public Editor_binding get_editor_binding()
+    {
+        return m_editor_binding;
+    }
+
+    /**
+     * The workbench windows the part listener is registered with.
+     */
+    private final HashSet<IWorkbenchWindow> m_listened_windows = new HashSet<IWorkbenchWindow>();
+
+    /**
+     * Drops the binding of an editor when it is closed or its input changes.
+     */
+    private final IPartListener2 m_editor_binding_part_listener = new IPartListener2()
+    {
+        @Override
+        public void partClosed( IWorkbenchPartReference part_reference )
+        {
+            invalidate_editor_binding( part_reference.getPart( false ) );
+        }
+
+        @Override
+        public void partInputChanged( IWorkbenchPartReference part_reference )
+        {
+            invalidate_editor_binding( part_reference.getPart( false ) );
+        }
+    };
+
+    /**
+     * Drops the binding of a multi-page editor when its active page changes.
+     */
+    private final IPageChangedListener m_editor_binding_page_listener = new IPageChangedListener()
+    {
+        @Override
+        public void pageChanged( PageChangedEvent event )
+        {
+            Object provider = event.getPageChangeProvider();
+            if( provider instanceof IWorkbenchPart ) invalidate_editor_binding( (IWorkbenchPart)provider );
+        }
+    };
+
+    /**
+     * Drops the bindings of an editor when its styled text is disposed.
+     */
+    private final DisposeListener m_editor_binding_dispose_listener = new DisposeListener()
+    {
+        @Override
+        public void widgetDisposed( DisposeEvent event )
+        {
+            List<IEditorPart> disposed_editors = new ArrayList<IEditorPart>();
+            for( Editor_binding binding : m_editor_bindings.values() )
+            {
+                if( binding.get_styled_text() == event.widget ) disposed_editors.add( binding.get_editor() );
+            }
+
+            for( IEditorPart editor : disposed_editors )
+            {
+                invalidate_editor_binding( editor );
+            }
+        }
+    };
+
+    /**
+     * Drops the binding of an editor, so it is adapted again the next time it is used.
+     * The only removal path, used for a closed editor, a changed input or active page,
+     * and a disposed styled text, so the bookmarks are always detached from the editor.
      *
-     * @param active_editor     The active editor.
+     * @param part  The editor. Ignored if not an editor or not bound.
+     */
+    private void invalidate_editor_binding( IWorkbenchPart part )
+    {
+        if( !( part instanceof IEditorPart ) ) return;
+
+        Editor_binding binding = m_editor_bindings.remove( part );
+        if( binding == null ) return;
+
+        remove_page_listener( binding.get_editor() );
+        if( m_bookmarks_support != null ) m_bookmarks_support.detach( binding.get_editor() );
+        if( !binding.get_styled_text().isDisposed() )
+        {
+            binding.get_styled_text().removeDisposeListener( m_editor_binding_dispose_listener );
+        }
+        if( m_editor_binding == binding ) clear_editor_binding();
+    }
+
+    /**
+     * Forgets the active editor, together with everything taken from its binding, so nothing
+     * is left referring to an editor that was closed or disposed. Set again by set_editor.
      */
-    private void set_active_editor( IEditorPart active_editor ) throws IllegalArgumentException
+    private void clear_editor_binding()
     {
+        m_editor_binding = null;
+        m_active_editor_parent = null;
+        m_active_editor = null;
+        m_styled_text = null;
+    }
+
+    /**
+     * Stops listening for page changes of a multi-page editor.
+     *
+     * @param editor    The editor as given by the workbench.
+     */
+    private void remove_page_listener( IEditorPart editor )
+    {
+        if( editor instanceof IPageChangeProvider )
+        {
+            ( (IPageChangeProvider)editor ).removePageChangedListener( m_editor_binding_page_listener );
+        }
+    }
+
+    /**
+     * Adapts an editor into its binding. For a multi-page editor, the active page's
+     * text editor is used, and the binding is dropped when the active page changes.
+     *
+     * @param active_editor     The editor as given by the workbench.
+     *
+     * @return  The binding.
+     *
+     * @throws InvocationTargetException
+     * @throws IllegalArgumentException     If the editor is not supported.
+     * @throws IllegalAccessException
+     * @throws SecurityException
+     * @throws NoSuchMethodException
+     */
+    private Editor_binding create_editor_binding( IEditorPart active_editor )
+        throws NoSuchMethodException, SecurityException, IllegalAccessException, IllegalArgumentException, InvocationTargetException
+    {
+        IEditorPart editor_part = null;
+
         if( active_editor instanceof ITextEditor )
         {
-            m_active_editor = active_editor;
-            m_styled_text = (StyledText)( ( (ITextEditor)m_active_editor ).getAdapter( Control.class ) );
-            if( m_styled_text != null ) return;
+            editor_part = active_editor;
+        }
+        else if( active_editor instanceof FormEditor )
+        {
+            FormEditor form_editor = (FormEditor)active_editor;
+            editor_part = form_editor.getActiveEditor();
+        }
+        else if( active_editor instanceof MultiPageEditorPart )
+        {
+            MultiPageEditorPart multi_page_editor_part = (MultiPageEditorPart)active_editor;
+            editor_part = getActiveEditor( multi_page_editor_part );
+        }
+        else
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Unsupported editor (" + active_editor.toString() + ")" ); //$NON-NLS-1$ //$NON-NLS-2$
+            Activator.set_status_line( Messages.text_editor_proxy_49 );
+            throw new IllegalArgumentException( "Unsupported editor" ); //$NON-NLS-1$
+        }
+
+        Editor_binding binding = null;
+        if( editor_part instanceof ITextEditor )
+        {
+            try
+            {
+                binding = new Editor_binding( active_editor, (ITextEditor)editor_part );
+            }
+            catch( IllegalArgumentException exception ) {}
         }
 
-        Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
-                "Unsupported editor (" + active_editor.toString() + ")" ); //$NON-NLS-1$ //$NON-NLS-2$
-        Activator.set_status_line( Messages.text_editor_proxy_48 );
-        throw new IllegalArgumentException( "Unsupported editor" ); //$NON-NLS-1$
+        if( binding == null )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Unsupported editor (" + editor_part + ")" ); //$NON-NLS-1$ //$NON-NLS-2$
+            Activator.set_status_line( Messages.text_editor_proxy_48 );
+            throw new IllegalArgumentException( "Unsupported editor" ); //$NON-NLS-1$
+        }
+
+        if( active_editor instanceof IPageChangeProvider )
+        {
+            ( (IPageChangeProvider)active_editor ).addPageChangedListener( m_editor_binding_page_listener );
+        }
+        binding.get_styled_text().addDisposeListener( m_editor_binding_dispose_listener );
+
+        if( m_bookmarks_support != null ) m_bookmarks_support.attach( active_editor, binding.get_text_editor() );
+
+        return binding;
     }
 
     /**
      * Updates the proxy with the current text editor and workbench window.
      * Must be called for every new key event in case there is a change of the active editor.
+     * The editor is only adapted the first time it is used, after that its binding is reused
+     * until the editor is closed, changes its input or changes its active page.
      *
      * Unfortunately, this accesses a protected method because otherwise it is quite
      * difficult to get the current text editor for all the varying editors in the
@@ -209,8 +416,6 @@ public class Text_editor_proxy
      * @param active_editor     The currently active editor.
      * @param workbench_window  The current workbench window.
      *
-     * @return Error status, true if error occurs, false otherwise.
-     *
      * @throws InvocationTargetException
      * @throws IllegalArgumentException
      * @throws IllegalAccessException
@@ -229,36 +434,23 @@ public class Text_editor_proxy
             throw new IllegalArgumentException( "Invalid or null parameters" ); //$NON-NLS-1$
         }
 
-        m_active_editor_parent = active_editor;
-
-        if( active_editor instanceof ITextEditor )
+        if( m_listened_windows.add( workbench_window ) )
         {
-            set_active_editor( active_editor );
-            return;
+            workbench_window.getPartService().addPartListener( m_editor_binding_part_listener );
+            if( m_bookmarks_support != null ) m_bookmarks_support.listen( workbench_window );
         }
 
-        if( active_editor instanceof FormEditor )
+        Editor_binding binding = m_editor_bindings.get( active_editor );
+        if( binding == null )
         {
-            FormEditor form_editor = (FormEditor)active_editor;
-            IEditorPart editor_part = form_editor.getActiveEditor();
-            set_active_editor( editor_part );
-
-            return;
+            binding = create_editor_binding( active_editor );
+            m_editor_bindings.put( active_editor, binding );
         }
 
-        if( active_editor instanceof MultiPageEditorPart )
-        {
-            MultiPageEditorPart multi_page_editor_part = (MultiPageEditorPart)active_editor;
-            IEditorPart editor_part = getActiveEditor( multi_page_editor_part );
-            set_active_editor( editor_part );
-
-            return;
-        }
-
-        Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
-                "Unsupported editor (" + active_editor.toString() + ")" ); //$NON-NLS-1$ //$NON-NLS-2$
-        Activator.set_status_line( Messages.text_editor_proxy_49 );
-        throw new IllegalArgumentException( "Unsupported editor" ); //$NON-NLS-1$
+        m_editor_binding = binding;
+        m_active_editor_parent = active_editor;
+        m_active_editor = binding.get_text_editor();
+        m_styled_text = binding.get_styled_text();
     }
 
     /**
@@ -266,7 +458,19 @@ public class Text_editor_proxy
      */
     public void dispose()
     {
+        for( IWorkbenchWindow window : m_listened_windows )
+        {
+            window.getPartService().removePartListener( m_editor_binding_part_listener );
+        }
+        m_listened_windows.clear();
+
+        for( IEditorPart editor : new ArrayList<IEditorPart>( m_editor_bindings.keySet() ) )
+        {
+            invalidate_editor_binding( editor );
+        }
+
         if( m_bookmarks_support != null ) m_bookmarks_support.dispose();
+        if( m_macro_support != null ) m_macro_support.dispose();
         if( m_scrap_buffer_support != null ) m_scrap_buffer_support.dispose();
     }
 
@@ -287,11 +491,27 @@ public class Text_editor_proxy
     private IEditorPart getActiveEditor( MultiPageEditorPart multi_page_editor_part )
             throws NoSuchMethodException, SecurityException, IllegalAccessException, IllegalArgumentException, InvocationTargetException
     {
-        Method m = MultiPageEditorPart.class.getDeclaredMethod( "getActiveEditor" ); //$NON-NLS-1$
-        m.setAccessible( true );
-        return (IEditorPart)m.invoke( multi_page_editor_part );
+        MethodHandle get_active_editor = m_get_active_editor.get_handle();
+        try
+        {
+            return (IEditorPart)get_active_editor.invoke( multi_page_editor_part );
+        }
+        catch( RuntimeException | Error exception )
+        {
+            throw exception;
+        }
+        catch( Throwable exception )
+        {
+            throw new InvocationTargetException( exception );
+        }
     }
 
+    /**
+     * The protected MultiPageEditorPart.getActiveEditor().
+     */
+    private static final Protected_method_accessors.Accessor m_get_active_editor =
+            Protected_method_accessors.get( MultiPageEditorPart.class, "getActiveEditor" ); //$NON-NLS-1$
+
     /**
      * Returns the caret offset of the end of the line at the given caret offset.
      * Does not include the line delimiter.
@@ -301,10 +521,27 @@ public class Text_editor_proxy
      */
     private int get_line_end_offset( int caret_offset )
     {
-        int line_index = m_styled_text.getLineAtOffset( caret_offset );
-        int line_end_offset = m_styled_text.getOffsetAtLine( line_index ) +
-                m_styled_text.getLine( line_index ).length();
-        return line_end_offset;
+        return get_line_end_offset_at_line( m_styled_text.getLineAtOffset( caret_offset ) );
+    }
+
+    /**
+     * Returns the caret offset of the end of the given line. Does not include the line delimiter.
+     * Only the delimiter is read, not the line, so this does not depend on the line's length.
+     *
+     * @param line_index    The line index in the widget.
+     *
+     * @return  The caret offset of the end of the line.
+     */
+    private int get_line_end_offset_at_line( int line_index )
+    {
+        if( line_index + 1 >= m_styled_text.getLineCount() ) return m_styled_text.getCharCount();
+
+        int line_start_offset = m_styled_text.getOffsetAtLine( line_index );
+        int next_line_start_offset = m_styled_text.getOffsetAtLine( line_index + 1 );
+        int tail_length = Math.min( 2, next_line_start_offset - line_start_offset );
+
+        return( next_line_start_offset - Text_utilities.get_trailing_line_delimiter_length(
+                m_styled_text.getTextRange( next_line_start_offset - tail_length, tail_length ) ) );
     }
 
     /**
@@ -317,37 +554,14 @@ public class Text_editor_proxy
     private String get_lines_delimiter( int caret_offset )
     {
         int line_end_offset = get_line_end_offset( caret_offset );
-        int content_length = m_styled_text.getCharCount();
-        if( line_end_offset == content_length )
+        int length = Math.min( 2, m_styled_text.getCharCount() - line_end_offset );
+        if( length <= 0 )
         {
             // End of file.
             return ""; //$NON-NLS-1$
         }
 
-        String line_end = System.getProperty( "line.separator" ); //$NON-NLS-1$
-
-        if( line_end_offset + 1 == content_length )
-        {
-            /**
-             * Empty line at the end and caret on the second to the last line.
-             * The method StyledText.getText has an issue for this case.
-             * It won't let you get just the delimiter but it will let you
-             * get the last character and the delimiter.
-             */
-            line_end = m_styled_text.getText( line_end_offset - 1, line_end_offset );
-        }
-        else
-        {
-            /*
-             * Far enough away from the end to grab the first character of the delimiter
-             * and the next character after that.
-             */
-            line_end = m_styled_text.getText( line_end_offset, line_end_offset + 1 );
-        }
-
-        line_end = line_end.replaceAll("[^\\r\\n]", ""); //$NON-NLS-1$ //$NON-NLS-2$
-
-        return line_end;
+        return Text_utilities.get_line_delimiter( m_styled_text.getTextRange( line_end_offset, length ), 0 );
     }
 
     /**
@@ -360,11 +574,12 @@ public class Text_editor_proxy
         int line_index = m_styled_text.getLineAtOffset( caret_offset );
         int start_of_line = m_styled_text.getOffsetAtLine( line_index );
 
-        int line_length = m_styled_text.getLine( line_index ).length() +
-                get_lines_delimiter( caret_offset ).length();
-        if( line_length == 0 ) return;
+        // The start of the next line is the end of this line's delimiter.
+        int end_of_line = ( line_index + 1 < m_styled_text.getLineCount() ) ?
+                m_styled_text.getOffsetAtLine( line_index + 1 ) : m_styled_text.getCharCount();
+        if( end_of_line == start_of_line ) return;
 
-        m_styled_text.setSelection( start_of_line, start_of_line + line_length );
+        m_styled_text.setSelection( start_of_line, end_of_line );
     }
 
     /**
@@ -534,6 +749,7 @@ public class Text_editor_proxy
         m_styled_text.removeListener( SWT.MouseUp, m_virtual_caret_mode_mouse_listener );
         m_styled_text.removeListener( SWT.KeyDown, m_virtual_caret_mode_key_listener );
         m_styled_text.removeListener( SWT.KeyUp, m_virtual_caret_mode_key_listener );
+        m_styled_text.removeVerifyKeyListener( m_virtual_caret_mode_verify_key_listener );
 
         m_styled_text.setCursor( null );
 
@@ -543,6 +759,8 @@ public class Text_editor_proxy
         }
 
         m_in_virtual_caret_mode = false;
+        m_virtual_caret_line = -1;
+        m_virtual_caret_column = -1;
 
         m_got_alt = false;
         m_got_marking_mode_key = false;
@@ -550,23 +768,38 @@ public class Text_editor_proxy
         Activator.set_status_line( null );
     }
 
+    /**
+     * The widget line the virtual caret is on, or -1 if not in virtual caret mode.
+     */
+    private int m_virtual_caret_line = -1;
+
+    /**
+     * The visual column of the virtual caret, which may be past the end of its line,
+     * or -1 if not in virtual caret mode.
+     */
+    private int m_virtual_caret_column = -1;
+
     /**
      * Start the virtual caret mode, which can place cursor in location that is out of
      * bounds of normal text.
      *
-     * TODO: Unfortunately, this uses a protected method in StyledText.class since
-     * the ability to move the cursor to virtual space is not exposed publicly.
+     * The virtual caret's line and column are tracked here, independently of StyledText,
+     * which only shows the caret, as an empty block selection. No whitespace is added to
+     * the line unless text is typed at the virtual caret.
      *
      * @param x     Virtual caret horizontal position.
      * @param y     Virtual caret vertical position.
-     *
-     * @return
      */
     private void start_virtual_caret_mode( int x, int y )
     {
         ( (ITextEditorExtension5)m_active_editor ).setBlockSelectionMode( true );
 
-        setBlockSelectionLocation( x, y, true );
+        int average_character_width = Math.max( 1, JFaceTextUtil.getAverageCharWidth( m_styled_text ) );
+        m_virtual_caret_line = m_styled_text.getLineIndex( y );
+        m_virtual_caret_column = Math.max( 0, ( x + m_styled_text.getHorizontalPixel() - m_styled_text.getLeftMargin() +
+                                                ( average_character_width / 2 ) ) / average_character_width );
+
+        place_virtual_caret( x, y );
 
         m_styled_text.setCursor( m_current_display.getSystemCursor( SWT.CURSOR_IBEAM ) );
 
@@ -577,6 +810,7 @@ public class Text_editor_proxy
         m_styled_text.addListener( SWT.MouseUp, m_virtual_caret_mode_mouse_listener );
         m_styled_text.addListener( SWT.KeyDown, m_virtual_caret_mode_key_listener );
         m_styled_text.addListener( SWT.KeyUp, m_virtual_caret_mode_key_listener );
+        m_styled_text.addVerifyKeyListener( m_virtual_caret_mode_verify_key_listener );
 
         m_got_alt = false;
         m_got_marking_mode_key = false;
@@ -621,24 +855,26 @@ public class Text_editor_proxy
     }
 
     /**
-     * Determines the total number of hidden rows of pixels from the start of the text to the
-     * beginning of the visible widget client area.
-     *
-     * @return  The hidden rows of pixels.
+     * Removes and adds back the key filters of the active marking mode, so they are called
+     * after any display filter added since the mode was started.
      */
-    private int get_vertical_scroll_offset()
+    protected void reinstall_marking_mode_key_filters()
     {
-        int hidden_top_line_pixels = JFaceTextUtil.getHiddenTopLinePixels( m_styled_text );
-        int partial_top_index = JFaceTextUtil.getPartialTopIndex( m_styled_text );
-        int vertical_scroll_offset = 0;
-        for( int i = 0; i < partial_top_index; i++ )
+        if( m_in_marking_mode || m_in_column_marking_mode )
         {
-            vertical_scroll_offset += JFaceTextUtil.computeLineHeight( m_styled_text, i );
+            m_current_display.removeFilter( SWT.KeyDown, m_marking_mode_key_filter );
+            m_current_display.removeFilter( SWT.KeyUp, m_marking_mode_key_filter );
+            m_current_display.addFilter( SWT.KeyDown, m_marking_mode_key_filter );
+            m_current_display.addFilter( SWT.KeyUp, m_marking_mode_key_filter );
         }
 
-        vertical_scroll_offset += hidden_top_line_pixels;
-
-        return vertical_scroll_offset;
+        if( m_in_line_marking_mode )
+        {
+            m_current_display.removeFilter( SWT.KeyDown, m_line_marking_mode_key_filter );
+            m_current_display.removeFilter( SWT.KeyUp, m_line_marking_mode_key_filter );
+            m_current_display.addFilter( SWT.KeyDown, m_line_marking_mode_key_filter );
+            m_current_display.addFilter( SWT.KeyUp, m_line_marking_mode_key_filter );
+        }
     }
 
     /**
@@ -956,6 +1192,105 @@ public class Text_editor_proxy
         }
     };
 
+    /**
+     * Places the StyledText caret at the virtual caret position, as an empty block selection.
+     * Uses the public block selection bounds, only falling back to the protected
+     * setBlockSelectionLocation() if the widget did not put the caret where asked.
+     *
+     * @param x     The horizontal pixel location, relative to the client area.
+     * @param y     The vertical pixel location, relative to the client area.
+     */
+    private void place_virtual_caret( int x, int y )
+    {
+        int document_x = x + m_styled_text.getHorizontalPixel();
+        m_styled_text.setBlockSelectionBounds( document_x,
+                                               y + m_styled_text.getTopPixel(),
+                                               0,
+                                               1 );
+
+        int tolerance = JFaceTextUtil.getAverageCharWidth( m_styled_text ) / 2;
+        if( Math.abs( m_styled_text.getBlockSelectionBounds().x - document_x ) <= tolerance ) return;
+
+        setBlockSelectionLocation( x, y, true );
+    }
+
+    /**
+     * Inserts typed text at the virtual caret. Only now is the line padded with spaces out
+     * to the virtual caret's column. The padding and the text are inserted into the document
+     * model in a single batched execution, and the virtual caret mode ends with the caret
+     * after the inserted text.
+     *
+     * @param text  The typed text.
+     */
+    private void materialize_virtual_caret( String text )
+    {
+        int widget_line = m_virtual_caret_line;
+        int column = m_virtual_caret_column;
+
+        IDocumentProvider provider = ( (ITextEditor)m_active_editor ).getDocumentProvider();
+        IDocument document = provider.getDocument( ( (ITextEditor)m_active_editor ).getEditorInput() );
+        ITextViewerExtension5 extension = m_editor_binding.get_text_viewer_extension5();
+
+        stop_virtual_caret_mode( true );
+
+        if( ( document == null ) || ( widget_line == -1 ) ) return;
+
+        int model_line = ( extension != null ) ? extension.widgetLine2ModelLine( widget_line ) : widget_line;
+        if( model_line == -1 ) return;
+
+        try
+        {
+            IRegion line_region = document.getLineInformation( model_line );
+            String line_text = document.get( line_region.getOffset(), line_region.getLength() );
+            int line_end_offset = line_region.getOffset() + line_region.getLength();
+
+            StringBuilder insertion = new StringBuilder( column + text.length() );
+            for( int pad = get_visual_column( line_text, line_text.length() ); pad < column; pad++ ) insertion.append( ' ' );
+            insertion.append( text );
+
+            boolean error = execute_batched( (i_batched_operation)() ->
+            {
+                try
+                {
+                    document.replace( line_end_offset, 0, insertion.toString() );
+                    return false;
+                }
+                catch( BadLocationException exception )
+                {
+                    return true;
+                }
+            } );
+            if( error ) return;
+
+            set_model_current_caret_offset( line_end_offset + insertion.length() );
+        }
+        catch( BadLocationException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not insert at the virtual caret", exception ); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Intercepts typed characters while in virtual caret mode, so they are inserted at
+     * the virtual caret instead of by the block selection.
+     */
+    private VerifyKeyListener m_virtual_caret_mode_verify_key_listener = new VerifyKeyListener()
+    {
+        @Override
+        public void verifyKey( VerifyEvent event )
+        {
+            if( !m_in_virtual_caret_mode ) return;
+
+            // Only text, not control characters or shortcuts.
+            if( ( event.stateMask & ( SWT.MOD1 | SWT.MOD3 ) ) != 0 ) return;
+            if( ( ( event.character < ' ' ) && ( event.character != '\t' ) ) || ( event.character == SWT.DEL ) ) return;
+
+            event.doit = false;
+            materialize_virtual_caret( String.valueOf( event.character ) );
+        }
+    };
+
     /**
      * Keystroke filter for monitoring key event while in virtual caret mode.
      */
@@ -1014,6 +1349,100 @@ public class Text_editor_proxy
         }
     };
 
+    /**
+     * Simple interface to pass an operation to be executed as a single batch.
+     */
+    public interface i_batched_operation
+    {
+        /**
+         * Performs the operation.
+         *
+         * @return  Error status. True if an error occurs.
+         */
+        public boolean run();
+    }
+
+    /**
+     * The rewrite target of the editor while a batched execution is in progress.
+     */
+    private IRewriteTarget m_batch_rewrite_target = null;
+
+    /**
+     * The styled text whose painting is suspended while a batched execution is in progress.
+     */
+    private StyledText m_batch_styled_text = null;
+
+    /**
+     * The nesting depth of batched executions. Only the outermost one opens and closes the batch.
+     */
+    private int m_batch_depth = 0;
+
+    /**
+     * Executes the given operation as a single compound change with redraw suspended.
+     * The document changes made by the operation are undone in a single step, and the
+     * widget is repainted once when the batch ends, instead of once per change.
+     * Batches can be nested.
+     *
+     * Only the widget's painting is suspended. The text viewer's redraw is left alone
+     * because it stops forwarding document changes to the widget, and the batched
+     * operations usually act through the widget and depend on its caret and selection.
+     *
+     * @param operation     The operation to execute.
+     *
+     * @return  Error status of the operation. True if an error occurs.
+     */
+    protected boolean execute_batched( i_batched_operation operation )
+    {
+        begin_batched_execution();
+
+        try
+        {
+            return operation.run();
+        }
+        finally
+        {
+            end_batched_execution();
+        }
+    }
+
+    /**
+     * Starts a compound change and suspends painting for the active editor.
+     */
+    private void begin_batched_execution()
+    {
+        if( m_batch_depth++ > 0 ) return;
+
+        m_batch_styled_text = m_styled_text;
+        if( m_batch_styled_text != null ) m_batch_styled_text.setRedraw( false );
+
+        m_batch_rewrite_target = ( m_editor_binding != null ) ? m_editor_binding.get_rewrite_target() : null;
+        if( m_batch_rewrite_target != null )
+        {
+            m_batch_rewrite_target.beginCompoundChange();
+        }
+    }
+
+    /**
+     * Ends the compound change and resumes painting for the active editor.
+     */
+    private void end_batched_execution()
+    {
+        if( --m_batch_depth > 0 ) return;
+
+        if( m_batch_rewrite_target != null )
+        {
+            m_batch_rewrite_target.endCompoundChange();
+            m_batch_rewrite_target = null;
+        }
+
+        if( ( m_batch_styled_text != null ) && !m_batch_styled_text.isDisposed() )
+        {
+            m_batch_styled_text.setRedraw( true );
+        }
+
+        m_batch_styled_text = null;
+    }
+
     /**
      * Inserts the given string into the active editor a given number of times
      * according to the passed count.
@@ -1026,23 +1455,29 @@ public class Text_editor_proxy
     {
         if( string.length() == 0 ) return;
 
-        // The user can insert a newline into the string using "\\n".
-        string = string.replace( Messages.text_editor_proxy_0, System.getProperty( "line.separator" ) ); //$NON-NLS-1$
-
-        // The user can insert a tab into the string using "\\t".
-        string = string.replace( Messages.text_editor_proxy_1, Messages.text_editor_proxy_24 );
-
-        StringBuilder complete_string = new StringBuilder();
-        for( int i = 0; i < count; i++ )
+        String complete_string = Text_utilities.expand_repeat_string( string,
+                                                                      count,
+                                                                      Messages.text_editor_proxy_0,
+                                                                      System.getProperty( "line.separator" ), //$NON-NLS-1$
+                                                                      Messages.text_editor_proxy_1,
+                                                                      Messages.text_editor_proxy_24 );
+        if( complete_string == null )
         {
-            complete_string.append( string );
+            Activator.beep();
+            return;
         }
 
-        m_styled_text.insert( complete_string.toString() );
+        execute_batched( (i_batched_operation)() ->
+        {
+            m_styled_text.insert( complete_string );
+            return false;
+        } );
     }
 
     /**
      * Repeat a command a given number of times.
+     * The command's key combination is resolved once to whatever it is bound to,
+     * then that is invoked in-process the requested number of times as a single batch.
      *
      * @param command           The command to repeat.
      * @param command_codes     The command key codes. The SWT modifier bits, if any, are index 0.
@@ -1055,49 +1490,37 @@ public class Text_editor_proxy
                                     int[] command_codes,
                                     int count )
     {
-        for( int i = 0; i < count; i++ )
-        {
-            try
-            {
-                if( ( command_codes[0] & SWT.CTRL ) != 0 )
-                {
-                    m_swt_vk_key_mapper.press_key( SWT.CTRL );
-                }
-
-                if( ( command_codes[0] & SWT.ALT ) != 0 )
-                {
-                    m_swt_vk_key_mapper.press_key( SWT.ALT );
-                }
-
-                if( ( command_codes[0] & SWT.SHIFT ) != 0 )
-                {
-                    m_swt_vk_key_mapper.press_key( SWT.SHIFT );
-                }
-
-                m_swt_vk_key_mapper.press_key( command_codes[1] );
-                m_swt_vk_key_mapper.release_key( command_codes[1] );
-
-                if( ( command_codes[0] & SWT.SHIFT ) != 0 )
-                {
-                    m_swt_vk_key_mapper.release_key( SWT.SHIFT );
-                }
+        Command_replay_engine.Resolved_key resolved_key =
+                m_command_replay_engine.resolve( command_codes[0], command_codes[1] );
 
-                if( ( command_codes[0] & SWT.ALT ) != 0 )
-                {
-                    m_swt_vk_key_mapper.release_key( SWT.ALT );
-                }
+        // Repeating the macro playback plays back the whole macro count times in one batch.
+        if( Macro_support.MACRO_PLAYBACK_COMMAND_ID.equals( resolved_key.get_command_id() ) )
+        {
+            return m_macro_support.playback( count );
+        }
 
-                if( ( command_codes[0] & SWT.CTRL ) != 0 )
-                {
-                    m_swt_vk_key_mapper.release_key( SWT.CTRL );
-                }
-            }
-            catch( IllegalArgumentException | ParseException exception )
+        /*
+         * In-process replays are batched so the whole repeat is a single undo step with a
+         * single repaint. Robot replays are processed later by the OS so can't be batched.
+         */
+        boolean error;
+        if( ( count > 1 ) && resolved_key.is_in_process() )
+        {
+            error = execute_batched( (i_batched_operation)() ->
             {
-                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
-                        "Command <" + command + "> not found.", exception ); //$NON-NLS-1$ //$NON-NLS-2$
-                return true;
-            }
+                return m_command_replay_engine.replay( resolved_key, count );
+            } );
+        }
+        else
+        {
+            error = m_command_replay_engine.replay( resolved_key, count );
+        }
+
+        if( error )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Command <" + command + "> could not be repeated." ); //$NON-NLS-1$ //$NON-NLS-2$
+            return true;
         }
 
         return false;
@@ -1128,9 +1551,16 @@ public class Text_editor_proxy
         }
     }
 
+    /**
+     * The protected StyledText.setBlockSelectionLocation().
+     */
+    private static final Protected_method_accessors.Accessor m_set_block_selection_location =
+            Protected_method_accessors.get( StyledText.class, "setBlockSelectionLocation", int.class, int.class, boolean.class ); //$NON-NLS-1$
+
     /**
      * Moves the cursor to the x/y coordinate. Must be in block selection mode.
-     * Unfortunately, this uses reflection to obtain a protected method.
+     * Unfortunately, this uses reflection to obtain a protected method. The method is
+     * resolved once, and only used when the public block selection bounds don't work.
      *
      * @param x             The horizontal pixel location.
      * @param y             The vertical pixel location.
@@ -1138,23 +1568,33 @@ public class Text_editor_proxy
      */
     private void setBlockSelectionLocation( int x, int y, boolean sendEvent )
     {
+        MethodHandle set_block_selection_location = null;
+        try
+        {
+            set_block_selection_location = m_set_block_selection_location.get_handle();
+        }
+        catch( NoSuchMethodException | IllegalAccessException exception )
+        {
+            // The failed lookup is kept by the accessor, only report it the first time.
+            if( m_set_block_selection_location.get_failure_count() == 1 )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Could not execute protected methods in StyledText.class", exception ); //$NON-NLS-1$
+            }
+            return;
+        }
+
         try
         {
-            Method m = m_styled_text.getClass().getDeclaredMethod( "setBlockSelectionLocation", //$NON-NLS-1$
-                                                                   int.class,
-                                                                   int.class,
-                                                                   boolean.class );
-            m.setAccessible( true );
-            m.invoke( m_styled_text,
-                      x,
-                      y,
-                      sendEvent );
+            set_block_selection_location.invoke( m_styled_text,
+                                                 x,
+                                                 y,
+                                                 sendEvent );
         }
-        catch( NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException exception )
+        catch( Throwable exception )
         {
             Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
                     "Could not execute protected methods in StyledText.class", exception ); //$NON-NLS-1$
-            return;
         }
     }
 
@@ -1169,9 +1609,9 @@ public class Text_editor_proxy
             select_current_line();
 
             m_scrap_buffer_support.copy( m_current_display,
+                                         m_styled_text.getSelectionText(),
                                          (i_editor_copy)() ->
                 {
-                    m_styled_text.copy();
                     return null;
                 } );
 
@@ -1183,9 +1623,9 @@ public class Text_editor_proxy
         if( !m_in_column_marking_mode )
         {
             m_scrap_buffer_support.copy( m_current_display,
+                                         m_styled_text.getSelectionText(),
                                          (i_editor_copy)() ->
                 {
-                    m_styled_text.copy();
                     return null;
                 } );
 
@@ -1195,29 +1635,23 @@ public class Text_editor_proxy
         }
         else
         {
-            // Determine the geometry of the block for use below.
-            Rectangle block_rectangle = m_styled_text.getBlockSelectionBounds();
+            Column_block block = get_column_block();
+            if( block == null ) return;
 
             m_scrap_buffer_support.copy( m_current_display,
+                                         block.m_text,
                                          (i_editor_copy)() ->
                 {
-                    m_styled_text.copy();
-                    return( new Point( block_rectangle.width, block_rectangle.height ) );
+                    return( new Point( block.m_width, block.m_regions.length ) );
                 } );
 
             stop_column_marking_mode();
 
             // Move the caret to the lower left of the block to make multiple pastes more convenient.
             // This also clears the selection.
-            Point lower_left = new Point( block_rectangle.x, block_rectangle.y + block_rectangle.height );
-            lower_left.x -= m_styled_text.getHorizontalPixel();
-            lower_left.y -= get_vertical_scroll_offset();
-            int new_caret_offset = m_styled_text.getOffsetAtPoint( lower_left );
-            if( new_caret_offset != -1 )
-            {
-                m_styled_text.setSelection( new_caret_offset );
-            }
-            else
+            if( !move_caret_to_column( block.m_document,
+                                       block.m_start_line + block.m_regions.length,
+                                       block.m_start_column ) )
             {
                 // Can't place the caret there, so just clear the selection.
                 m_styled_text.setSelection( m_styled_text.getCaretOffset() );
@@ -1240,9 +1674,11 @@ public class Text_editor_proxy
             select_current_line();
 
             m_scrap_buffer_support.cut( m_current_display,
+                                        m_styled_text.getSelectionText(),
                                         (i_editor_cut)() ->
             {
-                m_styled_text.cut();
+                // Deletes the selection, or the block contents in block selection mode.
+                m_styled_text.insert( "" ); //$NON-NLS-1$
                 return null;
             } );
 
@@ -1254,9 +1690,11 @@ public class Text_editor_proxy
         if( !m_in_column_marking_mode )
         {
             m_scrap_buffer_support.cut( m_current_display,
+                                        m_styled_text.getSelectionText(),
                                         (i_editor_cut)() ->
             {
-                m_styled_text.cut();
+                // Deletes the selection, or the block contents in block selection mode.
+                m_styled_text.insert( "" ); //$NON-NLS-1$
                 return null;
             } );
 
@@ -1266,14 +1704,15 @@ public class Text_editor_proxy
         }
         else
         {
-            // Determine the geometry of the block for use later.
-            Rectangle block_rectangle = m_styled_text.getBlockSelectionBounds();
+            Column_block block = get_column_block();
+            if( block == null ) return;
 
             m_scrap_buffer_support.cut( m_current_display,
+                                        block.m_text,
                                         (i_editor_cut)() ->
             {
-                m_styled_text.cut();
-                return( new Point( block_rectangle.width, block_rectangle.height ) );
+                delete_column_block( block );
+                return( new Point( block.m_width, block.m_regions.length ) );
             } );
 
             stop_column_marking_mode();
@@ -1301,64 +1740,362 @@ public class Text_editor_proxy
 
         if( validate( m_workbench_window, m_active_editor ) ) return;
 
-        if( !m_scrap_buffer_support.clipboard_is_column_content() )
+        // The clipboard is only read if another application put something on it.
+        if( scrap_item == null )
+        {
+            scrap_item = m_scrap_buffer_support.get_clipboard_item( m_current_display );
+            if( scrap_item == null ) return;
+
+            m_scrap_buffer_support.newest_item_pasted();
+        }
+
+        if( !scrap_item.is_column_content() )
+        {
+            m_styled_text.insert( to_document_line_delimiters( scrap_item.get_text() ) );
+
+            stop_all_marking_modes( false, true );
+
+            return;
+        }
+        else
+        {
+            insert_column_block( scrap_item.get_column_rows(),
+                                 scrap_item.get_column_width() );
+
+            stop_all_marking_modes( false, false );
+
+            return;
+        }
+    }
+
+    /**
+     * Inserts the rows of a column block at the caret's column on the caret's line and the
+     * lines below it, adding lines at the end of the text as needed. Lines shorter than the
+     * caret's column are padded with spaces, and rows are padded to the block width where
+     * text follows them, so the text to the right of the block stays aligned.
+     *
+     * All the insertions are computed against the document model, so folded lines are
+     * handled, and applied as a single multi-edit in one batched execution. The block
+     * selection mode is not used. The caret is left at the lower left of the block to make
+     * multiple pastes more convenient.
+     *
+     * @param rows      The rows of the block.
+     * @param width     The width of the block, in characters.
+     */
+    private void insert_column_block( String[] rows,
+                                      int width )
+    {
+        IDocumentProvider provider = ( (ITextEditor)m_active_editor ).getDocumentProvider();
+        IDocument document = provider.getDocument( ( (ITextEditor)m_active_editor ).getEditorInput() );
+        int caret_offset = get_model_current_caret_offset();
+        if( ( document == null ) || ( caret_offset == -1 ) ) return;
+
+        try
         {
-            if( scrap_item == null )
+            int start_line = document.getLineOfOffset( caret_offset );
+            int start_line_offset = document.getLineOffset( start_line );
+            int column = get_visual_column( document.get( start_line_offset, caret_offset - start_line_offset ),
+                                            caret_offset - start_line_offset );
+
+            MultiTextEdit edit = new MultiTextEdit();
+            StringBuilder insertion = new StringBuilder( width + column );
+            StringBuilder appended_lines = new StringBuilder();
+            String delimiter = TextUtilities.getDefaultLineDelimiter( document );
+            int line_count = document.getNumberOfLines();
+
+            for( int i = 0; i < rows.length; i++ )
             {
-                m_styled_text.paste();
+                int line = start_line + i;
+
+                // Lines past the end of the document are appended in one insertion.
+                if( line >= line_count )
+                {
+                    appended_lines.append( delimiter );
+                    for( int pad = 0; pad < column; pad++ ) appended_lines.append( ' ' );
+                    appended_lines.append( rows[i] );
+                    continue;
+                }
+
+                IRegion line_region = document.getLineInformation( line );
+                String line_text = document.get( line_region.getOffset(), line_region.getLength() );
+                int index = get_index_at_visual_column( line_text, column );
+                int line_column = get_visual_column( line_text, index );
+
+                insertion.setLength( 0 );
+                for( int pad = line_column; pad < column; pad++ ) insertion.append( ' ' );
+                insertion.append( rows[i] );
+                if( index < line_text.length() )
+                {
+                    for( int pad = rows[i].length(); pad < width; pad++ ) insertion.append( ' ' );
+                }
+
+                edit.addChild( new InsertEdit( line_region.getOffset() + index, insertion.toString() ) );
             }
-            else
+
+            if( appended_lines.length() > 0 )
             {
-                m_styled_text.insert( scrap_item.m_text );
+                edit.addChild( new InsertEdit( document.getLength(), appended_lines.toString() ) );
             }
 
-            stop_all_marking_modes( false, true );
+            boolean error = execute_batched( (i_batched_operation)() ->
+            {
+                try
+                {
+                    edit.apply( document, TextEdit.NONE );
+                    return false;
+                }
+                catch( MalformedTreeException | BadLocationException exception )
+                {
+                    Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                            "Could not paste the column block", exception ); //$NON-NLS-1$
+                    return true;
+                }
+            } );
+            if( error ) return;
 
-            return;
+            // Move the caret to the lower left of the block.
+            if( move_caret_to_column( document, start_line + rows.length, column ) ) return;
         }
-        else
+        catch( BadLocationException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not paste the column block", exception ); //$NON-NLS-1$
+        }
+
+        // Can't place the caret there, so just clear the selection.
+        m_styled_text.setSelection( m_styled_text.getCaretOffset() );
+    }
+
+    /**
+     * Moves the caret to a visual column of a line of the document model, if the line
+     * reaches that column.
+     *
+     * @param document  The document.
+     * @param line      The line of the document model.
+     * @param column    The visual column.
+     *
+     * @return  True if the caret was moved.
+     */
+    private boolean move_caret_to_column( IDocument document,
+                                          int line,
+                                          int column )
+    {
+        if( line >= document.getNumberOfLines() ) return false;
+
+        try
         {
-            // Determine the virtual starting point of the block to be pasted for use below.
-            int caret_offset = m_styled_text.getCaretOffset();
-            Point block_start_point = m_styled_text.getLocationAtOffset( caret_offset );
-            int x = block_start_point.x + m_styled_text.getHorizontalPixel();
-            int y = block_start_point.y + get_vertical_scroll_offset();
+            IRegion line_region = document.getLineInformation( line );
+            String line_text = document.get( line_region.getOffset(), line_region.getLength() );
+            int index = get_index_at_visual_column( line_text, column );
+            if( get_visual_column( line_text, index ) != column ) return false;
+
+            set_model_current_caret_offset( line_region.getOffset() + index );
+            return true;
+        }
+        catch( BadLocationException exception )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * A column block selection, in terms of the document model.
+     */
+    private static class Column_block
+    {
+        /**
+         * The document the block is in.
+         */
+        IDocument m_document;
+
+        /**
+         * The region of the block on each line, in the document model.
+         */
+        IRegion[] m_regions;
+
+        /**
+         * The first line of the block in the document model.
+         */
+        int m_start_line;
 
-            Point size = m_scrap_buffer_support.clipboard_column_mode_size();
-            Rectangle block_rectangle = new Rectangle( x, y, size.x, size.y );
+        /**
+         * The visual column the block starts at.
+         */
+        int m_start_column;
+
+        /**
+         * The width of the block, in characters.
+         */
+        int m_width;
+
+        /**
+         * The text of the block, the rows separated by line delimiters.
+         */
+        String m_text;
+    }
+
+    /**
+     * Gets the current block selection from the document model. The block selection is read
+     * from the editor's selection provider, or if that is not a block selection, the widget's
+     * selection ranges are mapped to the model through ITextViewerExtension5, so folded
+     * lines are handled either way. The text is read straight from the document.
+     *
+     * @return  The block, or null if there is no block selection.
+     */
+    private Column_block get_column_block()
+    {
+        IDocumentProvider provider = ( (ITextEditor)m_active_editor ).getDocumentProvider();
+        IDocument document = provider.getDocument( ( (ITextEditor)m_active_editor ).getEditorInput() );
+        if( document == null ) return null;
 
-            ( (ITextEditorExtension5)m_active_editor ).setBlockSelectionMode( true );
+        Column_block block = new Column_block();
+        block.m_document = document;
 
-            if( scrap_item == null )
+        try
+        {
+            ISelection selection = ( (ITextEditor)m_active_editor ).getSelectionProvider().getSelection();
+            if( selection instanceof IBlockTextSelection )
             {
-                m_styled_text.paste();
+                IBlockTextSelection block_selection = (IBlockTextSelection)selection;
+                block.m_regions = block_selection.getRegions();
+                block.m_start_line = block_selection.getStartLine();
+                block.m_start_column = block_selection.getStartColumn();
+                block.m_width = block_selection.getEndColumn() - block_selection.getStartColumn();
             }
             else
             {
-                m_styled_text.insert( scrap_item.m_text );
+                ITextViewerExtension5 extension = m_editor_binding.get_text_viewer_extension5();
+                int[] ranges = m_styled_text.getSelectionRanges();
+                List<IRegion> regions = new ArrayList<>( ranges.length / 2 );
+                for( int i = 0; i < ( ranges.length / 2 ); i++ )
+                {
+                    IRegion widget_region = new Region( ranges[2 * i], ranges[( 2 * i ) + 1] );
+                    IRegion region = ( extension != null ) ?
+                            extension.widgetRange2ModelRange( widget_region ) : widget_region;
+
+                    // Rows inside a collapsed fold have no model range, and are not copied.
+                    if( region != null ) regions.add( region );
+                }
+                block.m_regions = regions.toArray( new IRegion[regions.size()] );
+
+                if( block.m_regions.length == 0 ) return null;
+
+                int start_offset = block.m_regions[0].getOffset();
+                block.m_start_line = document.getLineOfOffset( start_offset );
+                int line_offset = document.getLineOffset( block.m_start_line );
+                block.m_start_column = get_visual_column( document.get( line_offset, start_offset - line_offset ),
+                                                          start_offset - line_offset );
+                for( IRegion region : block.m_regions )
+                {
+                    block.m_width = Math.max( block.m_width, region.getLength() );
+                }
             }
 
-            ( (ITextEditorExtension5)m_active_editor ).setBlockSelectionMode( false );
+            if( ( block.m_regions == null ) || ( block.m_regions.length == 0 ) ) return null;
 
-            // Move the caret to the lower left of the block to make multiple pastes more convenient.
-            Point lower_left = new Point( block_rectangle.x, block_rectangle.y + block_rectangle.height );
-            lower_left.x -= m_styled_text.getHorizontalPixel();
-            lower_left.y -= get_vertical_scroll_offset();
-            int new_caret_offset = m_styled_text.getOffsetAtPoint( lower_left );
-            if( new_caret_offset != -1 )
+            // Read the rows straight into a buffer sized for the whole block.
+            String delimiter = TextUtilities.getDefaultLineDelimiter( document );
+            int length = ( block.m_regions.length - 1 ) * delimiter.length();
+            for( IRegion region : block.m_regions )
             {
-                m_styled_text.setSelection( new_caret_offset );
+                length += region.getLength();
             }
-            else
+
+            StringBuilder text = new StringBuilder( length );
+            for( int i = 0; i < block.m_regions.length; i++ )
             {
-                // Can't place the caret there, so just clear the selection.
-                m_styled_text.setSelection( m_styled_text.getCaretOffset() );
+                if( i > 0 ) text.append( delimiter );
+                text.append( document.get( block.m_regions[i].getOffset(), block.m_regions[i].getLength() ) );
             }
+            block.m_text = text.toString();
+        }
+        catch( BadLocationException exception )
+        {
+            Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                    "Could not read the column block", exception ); //$NON-NLS-1$
+            return null;
+        }
 
-            stop_all_marking_modes( false, false );
+        return block;
+    }
 
-            return;
+    /**
+     * Deletes the text of a column block from the document model, as a single multi-edit
+     * in one batched execution.
+     *
+     * @param block     The column block.
+     */
+    private void delete_column_block( Column_block block )
+    {
+        MultiTextEdit edit = new MultiTextEdit();
+        for( IRegion region : block.m_regions )
+        {
+            if( region.getLength() > 0 ) edit.addChild( new DeleteEdit( region.getOffset(), region.getLength() ) );
+        }
+
+        execute_batched( (i_batched_operation)() ->
+        {
+            try
+            {
+                edit.apply( block.m_document, TextEdit.NONE );
+                return false;
+            }
+            catch( MalformedTreeException | BadLocationException exception )
+            {
+                Activator.log_error( this.getClass().getName() + "." + new Throwable().getStackTrace()[0].getMethodName() + ": " + //$NON-NLS-1$ //$NON-NLS-2$
+                        "Could not cut the column block", exception ); //$NON-NLS-1$
+                return true;
+            }
+        } );
+    }
+
+    /**
+     * Gets the visual column of a character in a line of text, with tabs expanded.
+     *
+     * @param line_text     The text of the line.
+     * @param index         The index of the character in the line.
+     *
+     * @return  The visual column.
+     */
+    private int get_visual_column( String line_text,
+                                   int index )
+    {
+        int tab_width = Math.max( 1, m_styled_text.getTabs() );
+        int column = 0;
+        for( int i = 0; i < index; i++ )
+        {
+            column = ( line_text.charAt( i ) == '\t' ) ? ( ( ( column / tab_width ) + 1 ) * tab_width ) : ( column + 1 );
+        }
+
+        return column;
+    }
+
+    /**
+     * Gets the index of the character in a line of text at a visual column, with tabs
+     * expanded. If the column is past the end of the line, or inside a tab, the index of
+     * the last character before the column is returned.
+     *
+     * @param line_text     The text of the line.
+     * @param column        The visual column.
+     *
+     * @return  The index in the line.
+     */
+    private int get_index_at_visual_column( String line_text,
+                                            int column )
+    {
+        int tab_width = Math.max( 1, m_styled_text.getTabs() );
+        int visual_column = 0;
+        int index = 0;
+        while( index < line_text.length() )
+        {
+            int next_column = ( line_text.charAt( index ) == '\t' ) ? ( ( ( visual_column / tab_width ) + 1 ) * tab_width ) : ( visual_column + 1 );
+            if( next_column > column ) break;
+
+            visual_column = next_column;
+            index++;
         }
+
+        return index;
     }
 
     /**
@@ -1375,15 +2112,31 @@ public class Text_editor_proxy
         if( !m_styled_text.isTextSelected() ) return;
 
         // Save the current contents of clipboard, so we can "cut" the current selection.
-        Clipboard clipboard = new Clipboard( m_current_display );
-        TextTransfer text_transfer = TextTransfer.getInstance();
-        String text_data = (String)clipboard.getContents( text_transfer );
-        clipboard.dispose();
+        Scrap_item clipboard_item = m_scrap_buffer_support.get_clipboard_item( m_current_display );
+        String text_data = ( clipboard_item == null ) ? "" : clipboard_item.get_text(); //$NON-NLS-1$
 
         numpad_cut();
 
         // Now insert the saved clipboard contents.
-        m_styled_text.insert( text_data );
+        m_styled_text.insert( to_document_line_delimiters( text_data ) );
+    }
+
+    /**
+     * Converts the line delimiters of text to be inserted to the active document's default
+     * delimiter, as StyledText.paste() does, since text from another application may use
+     * different line endings.
+     *
+     * @param text  The text to insert.
+     *
+     * @return  The text with the document's line delimiters.
+     */
+    private String to_document_line_delimiters( String text )
+    {
+        IDocumentProvider provider = ( (ITextEditor)m_active_editor ).getDocumentProvider();
+        IDocument document = ( provider != null ) ? provider.getDocument( ( (ITextEditor)m_active_editor ).getEditorInput() ) : null;
+        if( document == null ) return text;
+
+        return Text_utilities.convert_line_delimiters( text, TextUtilities.getDefaultLineDelimiter( document ) );
     }
 
     /**
@@ -1497,7 +2250,14 @@ public class Text_editor_proxy
 
         Command_dialog dialog = new Command_dialog( m_workbench_window.getShell(),
                                                     m_active_editor );
-        if( dialog.open() == Window.OK )
+        int return_code = dialog.open();
+
+        // The repeated command is executed in-process, so the editor must be active first.
+        IWorkbenchPage workbench_page = m_workbench_window.getActivePage();
+        if( workbench_page == null ) return;
+        workbench_page.activate( m_active_editor );
+
+        if( return_code == Window.OK )
         {
             if( dialog.get_command().length() > 0 )
             {
@@ -1513,10 +2273,36 @@ public class Text_editor_proxy
                 return;
             }
         }
+    }
 
-        IWorkbenchPage workbench_page = m_workbench_window.getActivePage();
-        if( workbench_page == null ) return;
-        workbench_page.activate( m_active_editor );
+    /**
+     * Starts remembering a keystroke macro, or stops if already remembering.
+     */
+    protected void macro_record_toggle()
+    {
+        if( validate( m_workbench_window, m_active_editor ) ) return;
+
+        m_macro_support.record_toggle();
+    }
+
+    /**
+     * Plays back the remembered keystroke macro.
+     */
+    protected void macro_playback()
+    {
+        if( validate( m_workbench_window, m_active_editor ) ) return;
+
+        m_macro_support.playback( 1 );
+    }
+
+    /**
+     * Opens the dialog listing the stored keystroke macros.
+     */
+    protected void open_macro_dialog()
+    {
+        if( validate( m_workbench_window, m_active_editor ) ) return;
+
+        m_macro_support.open_macro_dialog( m_workbench_window );
     }
 
     /**
@@ -1798,8 +2584,7 @@ public class Text_editor_proxy
         int current_line_end_offset = get_line_end_offset( current_caret_offset );
 
         int visible_bottom_index = JFaceTextUtil.getBottomIndex( m_styled_text );
-        int visible_bottom_line_end_offset = m_styled_text.getOffsetAtLine( visible_bottom_index ) +
-                m_styled_text.getLine( visible_bottom_index ).length();
+        int visible_bottom_line_end_offset = get_line_end_offset_at_line( visible_bottom_index );
 
         boolean at_file_end = ( current_caret_offset == m_styled_text.getCharCount() );
         boolean at_window_end = ( current_caret_offset == visible_bottom_line_end_offset );
@@ -1904,12 +2689,12 @@ public class Text_editor_proxy
      */
     protected int get_model_current_caret_offset()
     {
-        ITextViewer text_viewer = (ITextViewer)m_active_editor.getAdapter( ITextOperationTarget.class );
-        if( text_viewer == null ) return( -1 );
+        if( ( m_editor_binding == null ) || ( m_editor_binding.get_text_viewer() == null ) ) return( -1 );
 
-        if( text_viewer instanceof ITextViewerExtension5 )
+        ITextViewerExtension5 extension = m_editor_binding.get_text_viewer_extension5();
+        if( extension != null )
         {
-            return( ( (ITextViewerExtension5)text_viewer ).widgetOffset2ModelOffset( m_styled_text.getCaretOffset() ) );
+            return( extension.widgetOffset2ModelOffset( m_styled_text.getCaretOffset() ) );
         }
         else
         {
@@ -1925,12 +2710,12 @@ public class Text_editor_proxy
      */
     protected int get_model_current_line_index()
     {
-        ITextViewer text_viewer = (ITextViewer)m_active_editor.getAdapter( ITextOperationTarget.class );
-        if( text_viewer == null ) return( -1 );
+        if( ( m_editor_binding == null ) || ( m_editor_binding.get_text_viewer() == null ) ) return( -1 );
 
-        if( text_viewer instanceof ITextViewerExtension5 )
+        ITextViewerExtension5 extension = m_editor_binding.get_text_viewer_extension5();
+        if( extension != null )
         {
-            return( ( (ITextViewerExtension5)text_viewer ).widgetLine2ModelLine( m_styled_text.getLineAtOffset( m_styled_text.getCaretOffset() ) ) );
+            return( extension.widgetLine2ModelLine( m_styled_text.getLineAtOffset( m_styled_text.getCaretOffset() ) ) );
         }
         else
         {
@@ -1948,12 +2733,12 @@ public class Text_editor_proxy
      */
     protected int get_model_last_line_index()
     {
-        ITextViewer text_viewer = (ITextViewer)m_active_editor.getAdapter( ITextOperationTarget.class );
-        if( text_viewer == null ) return( -1 );
+        if( ( m_editor_binding == null ) || ( m_editor_binding.get_text_viewer() == null ) ) return( -1 );
 
-        if( text_viewer instanceof ITextViewerExtension5 )
+        ITextViewerExtension5 extension = m_editor_binding.get_text_viewer_extension5();
+        if( extension != null )
         {
-            return( ( (ITextViewerExtension5)text_viewer ).widgetLine2ModelLine( m_styled_text.getLineCount() - 1 ) );
+            return( extension.widgetLine2ModelLine( m_styled_text.getLineCount() - 1 ) );
         }
         else
         {
@@ -2364,7 +3149,7 @@ public class Text_editor_proxy
     /**
      * Updates a given numbered bookmark with the current location in the active editor.
      *
-     * @param bookmark_number   The bookmark number to use, 1-10.
+     * @param bookmark_number   The bookmark number to use.
      */
     protected void drop_bookmark( int bookmark_number )
     {
@@ -2379,6 +3164,22 @@ public class Text_editor_proxy
         m_bookmarks_support.jump_bookmark( m_workbench_window );
     }
 
+    /**
+     * Creates a named bookmark at the current location in the active editor.
+     */
+    protected void drop_named_bookmark()
+    {
+        m_bookmarks_support.drop_named_bookmark( m_active_editor );
+    }
+
+    /**
+     * Opens the jump named bookmark dialog.
+     */
+    protected void jump_named_bookmark()
+    {
+        m_bookmarks_support.jump_named_bookmark( m_workbench_window, m_active_editor );
+    }
+
     /**
      * Listener to look for dialog activation so it can find the rename dialog.
      */
@@ -0,0 +1,267 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+/**
+ * The pure text algorithms used by the editor commands and dialogs. These only work on
+ * strings and character sequences, and depend on nothing but the JDK. The strings shown to
+ * the user, such as the ellipsis, are passed in by the callers from the messages, so the
+ * algorithms can be run and timed headless, without OSGi, against generated text of any size.
+ */
+public final class Text_utilities
+{
+    /**
+     * Not instantiated.
+     */
+    private Text_utilities() {}
+
+    /**
+     * Gets the line delimiter that starts at the given offset.
+     *
+     * @param text      The text.
+     * @param offset    The offset of the end of a line, not including its delimiter.
+     *
+     * @return  "\r\n", "\r", "\n", or "" if the offset is at the end of the text
+     *          or not at a line delimiter.
+     */
+    public static String get_line_delimiter( CharSequence text,
+                                             int offset )
+    {
+        if( offset >= text.length() ) return ""; //$NON-NLS-1$
+
+        char c = text.charAt( offset );
+        if( c == '\n' ) return "\n"; //$NON-NLS-1$
+        if( c != '\r' ) return ""; //$NON-NLS-1$
+
+        return( ( ( offset + 1 < text.length() ) && ( text.charAt( offset + 1 ) == '\n' ) ) ? "\r\n" : "\r" ); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Gets the length of the line delimiter that the given text ends with.
+     *
+     * @param text  The text, such as the last two characters of a line including its delimiter.
+     *
+     * @return  2 for "\r\n", 1 for "\r" or "\n", otherwise 0.
+     */
+    public static int get_trailing_line_delimiter_length( CharSequence text )
+    {
+        int length = text.length();
+        if( length == 0 ) return 0;
+
+        char last = text.charAt( length - 1 );
+        if( last == '\r' ) return 1;
+        if( last != '\n' ) return 0;
+
+        return( ( ( length > 1 ) && ( text.charAt( length - 2 ) == '\r' ) ) ? 2 : 1 );
+    }
+
+    /**
+     * Converts all the line delimiters of a text to the given one, such as a document's
+     * default delimiter, so text from another application doesn't mix line endings.
+     * Only copies the text if a delimiter needs converting.
+     *
+     * @param text              The text, with any mix of "\r\n", "\r" and "\n" delimiters.
+     * @param line_delimiter    The line delimiter to use.
+     *
+     * @return  The converted text, or the text itself if it only has the given delimiter.
+     */
+    public static String convert_line_delimiters( String text,
+                                                  String line_delimiter )
+    {
+        StringBuilder builder = null;
+        int run_start = 0;
+        int length = text.length();
+        for( int i = 0; i < length; i++ )
+        {
+            char c = text.charAt( i );
+            if( ( c != '\r' ) && ( c != '\n' ) ) continue;
+
+            int delimiter_length = ( ( c == '\r' ) && ( ( i + 1 ) < length ) && ( text.charAt( i + 1 ) == '\n' ) ) ? 2 : 1;
+            if( ( delimiter_length != line_delimiter.length() ) ||
+                    !text.regionMatches( i, line_delimiter, 0, delimiter_length ) )
+            {
+                if( builder == null ) builder = new StringBuilder( length + ( length / 16 ) );
+                builder.append( text, run_start, i );
+                builder.append( line_delimiter );
+                run_start = i + delimiter_length;
+            }
+
+            i += delimiter_length - 1;
+        }
+
+        if( builder == null ) return text;
+
+        builder.append( text, run_start, length );
+        return builder.toString();
+    }
+
+    /**
+     * Gets the length of a character once line delimiter characters are replaced with
+     * their string representations.
+     *
+     * @param c                     The character.
+     * @param cr_representation     The string shown for a CR.
+     * @param lf_representation     The string shown for a LF.
+     *
+     * @return  The length of the character's representation.
+     */
+    private static int get_expanded_length( char c,
+                                            String cr_representation,
+                                            String lf_representation )
+    {
+        if( c == '\r' ) return cr_representation.length();
+        if( c == '\n' ) return lf_representation.length();
+        return 1;
+    }
+
+    /**
+     * Appends part of a string, replacing the line delimiter characters with their
+     * string representations.
+     *
+     * @param builder             Where to append.
+     * @param text                The string.
+     * @param start               The start offset of the part, inclusive.
+     * @param end                 The end offset of the part, exclusive.
+     * @param cr_representation   The string shown for a CR.
+     * @param lf_representation   The string shown for a LF.
+     */
+    private static void append_expanded( StringBuilder builder,
+                                         String text,
+                                         int start,
+                                         int end,
+                                         String cr_representation,
+                                         String lf_representation )
+    {
+        int run_start = start;
+        for( int i = start; i < end; i++ )
+        {
+            char c = text.charAt( i );
+            if( ( c != '\r' ) && ( c != '\n' ) ) continue;
+
+            builder.append( text, run_start, i );
+            builder.append( ( c == '\r' ) ? cr_representation : lf_representation );
+            run_start = i + 1;
+        }
+        builder.append( text, run_start, end );
+    }
+
+    /**
+     * Converts a multi-line string to single line by replacing line separator with the string representation,
+     * i.e. [ SWT.CR / CR ('\r') ] , [ SWT.LF / LF ('\n') ], or [ SWT.CR + SWT.LF / CR+LF ("\r\n") ].
+     * Then truncates it to the given max length.
+     *
+     * Only the part of the string that is kept is converted, so a long string is not copied
+     * as a whole. A surrogate pair is never split by the truncation.
+     *
+     * @param text                  The string to convert and truncate.
+     * @param column_max_chars      The length to truncate to.
+     * @param beginning_not_end     Truncate the beginning of the string if <i>true</i>, otherwise the end.
+     * @param cr_representation     The string shown for a CR.
+     * @param lf_representation     The string shown for a LF.
+     * @param elipsis               The string shown where the text is truncated.
+     *
+     * @return  The modified string.
+     */
+    public static String truncate_elipsis( String text,
+                                           int column_max_chars,
+                                           boolean beginning_not_end,
+                                           String cr_representation,
+                                           String lf_representation,
+                                           String elipsis )
+    {
+        int length = text.length();
+
+        int expanded_length = 0;
+        for( int i = 0; ( i < length ) && ( expanded_length <= column_max_chars ); i++ )
+        {
+            expanded_length += get_expanded_length( text.charAt( i ), cr_representation, lf_representation );
+        }
+
+        if( expanded_length <= column_max_chars )
+        {
+            StringBuilder builder = new StringBuilder( expanded_length );
+            append_expanded( builder, text, 0, length, cr_representation, lf_representation );
+            return builder.toString();
+        }
+
+        int kept_length = Math.max( 0, column_max_chars - elipsis.length() );
+        StringBuilder builder = new StringBuilder( kept_length + elipsis.length() );
+
+        if( beginning_not_end )
+        {
+            int start = length;
+            int width = 0;
+            while( start > 0 )
+            {
+                int character_width = get_expanded_length( text.charAt( start - 1 ), cr_representation, lf_representation );
+                if( width + character_width > kept_length ) break;
+                width += character_width;
+                start--;
+            }
+            if( ( start < length ) && Character.isLowSurrogate( text.charAt( start ) ) ) start++;
+
+            builder.append( elipsis );
+            append_expanded( builder, text, start, length, cr_representation, lf_representation );
+        }
+        else
+        {
+            int end = 0;
+            int width = 0;
+            while( end < length )
+            {
+                int character_width = get_expanded_length( text.charAt( end ), cr_representation, lf_representation );
+                if( width + character_width > kept_length ) break;
+                width += character_width;
+                end++;
+            }
+            if( ( end > 0 ) && Character.isHighSurrogate( text.charAt( end - 1 ) ) ) end--;
+
+            append_expanded( builder, text, 0, end, cr_representation, lf_representation );
+            builder.append( elipsis );
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Expands the escapes in a string typed by the user for repeated insertion, and repeats it.
+     * The user can insert a newline into the string using "\\n", and a tab using "\\t".
+     *
+     * @param string            The string as typed by the user.
+     * @param count             The number of times to repeat it.
+     * @param newline_escape    The escape the user types for a newline.
+     * @param line_delimiter    The line delimiter to insert for the newline escape.
+     * @param tab_escape        The escape the user types for a tab.
+     * @param tab               The tab to insert for the tab escape.
+     *
+     * @return  The expanded and repeated string, or null if it would be too long for a string.
+     */
+    public static String expand_repeat_string( String string,
+                                               int count,
+                                               String newline_escape,
+                                               String line_delimiter,
+                                               String tab_escape,
+                                               String tab )
+    {
+        string = string.replace( newline_escape, line_delimiter );
+        string = string.replace( tab_escape, tab );
+
+        if( ( count <= 0 ) || string.isEmpty() ) return ""; //$NON-NLS-1$
+        if( (long)string.length() * count > Integer.MAX_VALUE - 8 ) return null;
+
+        return string.repeat( count );
+    }
+}
@@ -0,0 +1,75 @@
+/***************************************************************************//**
+ * Copyright (c) 2021 RKDAW Enterprises and Ralph Williamson,
+ * <rkdawenterprises.ddns.net, rkdawenterprises@gmail.com>. All rights reserved.
+ * This program, and the accompanying materials, are provided under the terms
+ * of the Eclipse Public License v2.0 (the "License"). You may not use this
+ * file except in compliance with the License. You may obtain a copy of the
+ * License at "https://www.eclipse.org/legal/epl-2.0".
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions, warranties,
+ * and limitations under the License.
+ ******************************************************************************/
+
+
+package net.ddns.rkdawenterprises.brief4eclipse;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable length integer encoding used by the binary storage formats.
+ * Small values, which are the most common, take a single byte.
+ */
+public final class Varint_codec
+{
+    /**
+     * Not instantiated.
+     */
+    private Varint_codec() {}
+
+    /**
+     * Writes an integer using 7 bits per byte, least significant first.
+     * The most significant bit of each byte indicates more bytes follow.
+     *
+     * @param output    The output.
+     * @param value     The value, treated as unsigned.
+     *
+     * @throws IOException
+     */
+    public static void write( DataOutput output,
+                              int value ) throws IOException
+    {
+        while( ( value & ~0x7F ) != 0 )
+        {
+            output.writeByte( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+
+        output.writeByte( value );
+    }
+
+    /**
+     * Reads an integer written by write().
+     *
+     * @param input     The input.
+     *
+     * @return  The value.
+     *
+     * @throws IOException
+     */
+    public static int read( DataInput input ) throws IOException
+    {
+        int value = 0;
+        for( int shift = 0; shift < 35; shift += 7 )
+        {
+            int b = input.readUnsignedByte();
+            value |= ( b & 0x7F ) << shift;
+            if( ( b & 0x80 ) == 0 ) return value;
+        }
+
+        throw new IOException( "Corrupt varint" ); //$NON-NLS-1$
+    }
+}